@@ -0,0 +1,170 @@
+package io.jeti.streams.benchmarks;
+
+import io.jeti.streams.CompactDataPacketStreamWriter;
+import io.jeti.streams.DataPacket;
+import io.jeti.streams.StreamReader;
+import io.jeti.streams.StreamWriterManager;
+import io.jeti.streams.StreamWriterManager.FlushPolicy;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Compares the {@link FlushPolicy}s of the {@link StreamWriterManager} over a
+ * loopback socket. {@link #latency(Latency)} hands one {@link Payload} at a
+ * time to the manager and waits for it to arrive, which is what control
+ * traffic looks like. {@link #throughput(Bulk)} keeps the queue full from a
+ * separate thread and measures how fast the objects arrive, which is what
+ * bulk data looks like. {@link FlushPolicy#maxBytes(int)} never sends a lone
+ * object, so it is only part of the second.
+ */
+public class FlushPolicyBenchmark {
+
+    public enum Policy {
+        PER_OBJECT {
+            @Override
+            FlushPolicy policy() {
+                return FlushPolicy.perObject();
+            }
+        },
+        WHEN_IDLE {
+            @Override
+            FlushPolicy policy() {
+                return FlushPolicy.whenIdle(256, 1 << 16);
+            }
+        },
+        MAX_LINGER {
+            @Override
+            FlushPolicy policy() {
+                return FlushPolicy.maxLinger(100, 1 << 16);
+            }
+        },
+        MAX_BYTES {
+            @Override
+            FlushPolicy policy() {
+                return FlushPolicy.maxBytes(1 << 16);
+            }
+        };
+
+        abstract FlushPolicy policy();
+    }
+
+    /**
+     * A {@link StreamWriterManager} writing to one end of a loopback socket,
+     * and a {@link StreamReader} on the other end.
+     */
+    static class Connection {
+
+        final BlockingQueue<DataPacket> queue = new ArrayBlockingQueue<>(1024);
+        private Socket                  client;
+        private Socket                  server;
+        private StreamWriterManager     manager;
+        StreamReader                    reader;
+        Object                          in;
+        Payload                         payload;
+
+        void open(Policy policy, int size) throws IOException {
+            try (ServerSocket serverSocket = new ServerSocket(0, 1,
+                    InetAddress.getLoopbackAddress())) {
+                client = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+                server = serverSocket.accept();
+            }
+            client.setTcpNoDelay(true);
+            manager = StreamWriterManager.start(client.getOutputStream(),
+                    new CompactDataPacketStreamWriter(), queue, policy.policy());
+            reader = Format.COMPACT.reader(true);
+            in = reader.preLoop(server.getInputStream());
+            payload = new Payload(size);
+        }
+
+        void close() throws IOException {
+            manager.stop();
+            client.close();
+            server.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Latency extends Connection {
+
+        @Param({ "PER_OBJECT", "WHEN_IDLE", "MAX_LINGER" })
+        Policy policy;
+
+        @Param({ "24", "4096" })
+        int    size;
+
+        @Setup
+        public void setup() throws IOException {
+            open(policy, size);
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Bulk extends Connection {
+
+        @Param({ "PER_OBJECT", "WHEN_IDLE", "MAX_LINGER", "MAX_BYTES" })
+        Policy         policy;
+
+        @Param({ "24", "4096" })
+        int            size;
+
+        private Thread producer;
+
+        @Setup
+        public void setup() throws IOException {
+            open(policy, size);
+            producer = new Thread(() -> {
+                try {
+                    while (true) {
+                        queue.put(payload);
+                    }
+                } catch (InterruptedException e) {
+                    /* The benchmark is over. */
+                }
+            });
+            producer.setDaemon(true);
+            producer.start();
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            producer.interrupt();
+            close();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @SuppressWarnings("unchecked")
+    public Object latency(Latency connection) throws Exception {
+        connection.queue.put(connection.payload);
+        return connection.reader.readOne(connection.in);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @SuppressWarnings("unchecked")
+    public Object throughput(Bulk connection) throws Exception {
+        return connection.reader.readOne(connection.in);
+    }
+}
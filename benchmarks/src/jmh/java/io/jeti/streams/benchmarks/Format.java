@@ -0,0 +1,68 @@
+package io.jeti.streams.benchmarks;
+
+import io.jeti.streams.CompactDataPacketStreamReader;
+import io.jeti.streams.CompactDataPacketStreamWriter;
+import io.jeti.streams.DataPacket;
+import io.jeti.streams.DataPacketStreamReader;
+import io.jeti.streams.DataPacketStreamWriter;
+import io.jeti.streams.SerializableStreamReader;
+import io.jeti.streams.SerializableStreamWriter;
+import io.jeti.streams.SerializableStreamWriter.ResetPolicy;
+import io.jeti.streams.StreamReader;
+import io.jeti.streams.StreamWriter;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The wire formats compared by the benchmarks. The benchmarks write the same
+ * {@link Payload} over and over, so {@link #SERIALIZABLE} resets the stream
+ * after every object. Otherwise, every write after the first would only be a
+ * back-reference, and the reader would hand back the object it already has.
+ * (Writing unshared is not enough, since the array of values would still be
+ * shared.)
+ */
+enum Format {
+
+    DATA_PACKET {
+        @Override
+        StreamWriter writer() {
+            return new DataPacketStreamWriter();
+        }
+
+        @Override
+        StreamReader reader(boolean buffered) {
+            return new DataPacketStreamReader(dataPacketMap, buffered);
+        }
+    },
+
+    COMPACT {
+        @Override
+        StreamWriter writer() {
+            return new CompactDataPacketStreamWriter();
+        }
+
+        @Override
+        StreamReader reader(boolean buffered) {
+            return new CompactDataPacketStreamReader(dataPacketMap, buffered);
+        }
+    },
+
+    SERIALIZABLE {
+        @Override
+        StreamWriter writer() {
+            return new SerializableStreamWriter(ResetPolicy.everyObjects(1));
+        }
+
+        @Override
+        StreamReader reader(boolean buffered) {
+            return new SerializableStreamReader(buffered);
+        }
+    };
+
+    private static final Map<String, DataPacket> dataPacketMap = Collections
+            .singletonMap(Payload.class.getName(), (DataPacket) new Payload());
+
+    abstract StreamWriter writer();
+
+    abstract StreamReader reader(boolean buffered);
+}
@@ -0,0 +1,52 @@
+package io.jeti.streams.benchmarks;
+
+import io.jeti.streams.DataPacket;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A {@link DataPacket} carrying a timestamp and an array of doubles, so that
+ * the payload size can be varied.
+ */
+public class Payload implements DataPacket<Payload> {
+
+    private static final long serialVersionUID = 1L;
+
+    long                      timestamp;
+    double[]                  values;
+
+    public Payload() {
+        this(0);
+    }
+
+    /**
+     * @param size: The approximate size of the encoded payload, in bytes.
+     */
+    public Payload(int size) {
+        this.values = new double[Math.max(0, (size - 12) / 8)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i;
+        }
+    }
+
+    @Override
+    public void write(DataOutputStream stream) throws IOException {
+        stream.writeLong(timestamp);
+        stream.writeInt(values.length);
+        for (double value : values) {
+            stream.writeDouble(value);
+        }
+    }
+
+    @Override
+    public Payload read(DataInputStream stream) throws IOException {
+        Payload payload = new Payload();
+        payload.timestamp = stream.readLong();
+        payload.values = new double[stream.readInt()];
+        for (int i = 0; i < payload.values.length; i++) {
+            payload.values[i] = stream.readDouble();
+        }
+        return payload;
+    }
+}
@@ -0,0 +1,84 @@
+package io.jeti.streams.benchmarks;
+
+import io.jeti.streams.PacketInputStream;
+import io.jeti.streams.PacketOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares writing and reading a double[] element by element with the bulk
+ * methods of the {@link PacketOutputStream} and {@link PacketInputStream}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PrimitiveArrayBenchmark {
+
+    @Param({ "16", "1024", "65536" })
+    int                           length;
+
+    private double[]              values;
+    private byte[]                bytes;
+    private ByteArrayOutputStream outputStream;
+    private DataOutputStream      dataOutputStream;
+    private PacketOutputStream    packetOutputStream;
+
+    @Setup
+    public void setup() throws IOException {
+        values = new double[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = i;
+        }
+        outputStream = new ByteArrayOutputStream(8 * length);
+        dataOutputStream = new DataOutputStream(outputStream);
+        packetOutputStream = new PacketOutputStream(outputStream);
+        packetOutputStream.writeDoubles(values);
+        bytes = outputStream.toByteArray();
+    }
+
+    @Benchmark
+    public int writeElementWise() throws IOException {
+        outputStream.reset();
+        for (double value : values) {
+            dataOutputStream.writeDouble(value);
+        }
+        return outputStream.size();
+    }
+
+    @Benchmark
+    public int writeBulk() throws IOException {
+        outputStream.reset();
+        packetOutputStream.writeDoubles(values);
+        return outputStream.size();
+    }
+
+    @Benchmark
+    public double[] readElementWise() throws IOException {
+        DataInputStream stream = new DataInputStream(new ByteArrayInputStream(bytes));
+        double[] read = new double[length];
+        for (int i = 0; i < length; i++) {
+            read[i] = stream.readDouble();
+        }
+        return read;
+    }
+
+    @Benchmark
+    public double[] readBulk() throws IOException {
+        PacketInputStream stream = new PacketInputStream(new ByteArrayInputStream(bytes));
+        double[] read = new double[length];
+        stream.readDoubles(read);
+        return read;
+    }
+}
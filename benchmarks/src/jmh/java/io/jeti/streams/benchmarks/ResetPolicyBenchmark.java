@@ -0,0 +1,101 @@
+package io.jeti.streams.benchmarks;
+
+import io.jeti.streams.SerializableStreamWriter;
+import io.jeti.streams.SerializableStreamWriter.ResetPolicy;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Shows the trade-off between the {@link ResetPolicy}s of the
+ * {@link SerializableStreamWriter}: resetting rarely lets repeated objects be
+ * sent as cheap back-references, but the stream retains every object written
+ * since the last reset. The "bytes" counter reports the bytes written per
+ * object. Run with "-prof gc" to see the heap churn of each policy.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ResetPolicyBenchmark {
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+
+        public long bytes;
+    }
+
+    /**
+     * Discards the bytes, but counts them.
+     */
+    private static class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    @Param({ "never", "objects", "bytes", "unshared" })
+    String                           policy;
+
+    @Param({ "24", "256" })
+    int                              size;
+
+    private SerializableStreamWriter writer;
+    private CountingOutputStream     outputStream;
+    private ObjectOutputStream       stream;
+    private Payload[]                payloads;
+    private int                      next;
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        switch (policy) {
+            case "objects":
+                writer = new SerializableStreamWriter(ResetPolicy.everyObjects(1000));
+                break;
+            case "bytes":
+                writer = new SerializableStreamWriter(ResetPolicy.everyBytes(1 << 20));
+                break;
+            case "unshared":
+                writer = new SerializableStreamWriter(ResetPolicy.unshared());
+                break;
+            default:
+                writer = new SerializableStreamWriter(ResetPolicy.never());
+                break;
+        }
+        outputStream = new CountingOutputStream();
+        stream = writer.preLoop(outputStream);
+        /* A small working set, so that back-references can pay off. */
+        payloads = new Payload[64];
+        for (int i = 0; i < payloads.length; i++) {
+            payloads[i] = new Payload(size);
+        }
+    }
+
+    @Benchmark
+    public void write(Counters counters) throws IOException {
+        long before = outputStream.count;
+        writer.writeOne(stream, payloads[next++ & (payloads.length - 1)]);
+        writer.flush(stream);
+        counters.bytes += outputStream.count - before;
+    }
+}
@@ -0,0 +1,69 @@
+package io.jeti.streams.benchmarks;
+
+import io.jeti.streams.StreamReader;
+import io.jeti.streams.StreamWriter;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Writes a batch of {@link Payload}s to an in-memory stream and reads them
+ * back, for every combination of format, payload size, and buffering.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RoundTripBenchmark {
+
+    static final int packets = 1000;
+
+    @Param({ "DATA_PACKET", "COMPACT", "SERIALIZABLE" })
+    Format           format;
+
+    @Param({ "24", "256", "4096" })
+    int              size;
+
+    @Param({ "true", "false" })
+    boolean          buffered;
+
+    private Payload  payload;
+
+    @Setup
+    public void setup() {
+        payload = new Payload(size);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(packets)
+    @SuppressWarnings("unchecked")
+    public Object roundTrip() throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream outputStream = buffered ? new BufferedOutputStream(bytes) : bytes;
+        StreamWriter writer = format.writer();
+        Object out = writer.preLoop(outputStream);
+        for (int i = 0; i < packets; i++) {
+            writer.writeOne(out, payload);
+        }
+        writer.flush(out);
+
+        StreamReader reader = format.reader(buffered);
+        Object in = reader.preLoop(new ByteArrayInputStream(bytes.toByteArray()));
+        Object last = null;
+        for (int i = 0; i < packets; i++) {
+            last = reader.readOne(in);
+        }
+        return last;
+    }
+}
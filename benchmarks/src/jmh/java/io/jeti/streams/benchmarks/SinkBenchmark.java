@@ -0,0 +1,124 @@
+package io.jeti.streams.benchmarks;
+
+import io.jeti.streams.RingBufferSink;
+import io.jeti.streams.Sink;
+import io.jeti.streams.Sinks;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Measures how long it takes for an object passed to one of the queuing
+ * {@link Sink}s to reach the downstream {@link Sink}. Each invocation hands
+ * over one object and waits until it has been processed, so the sampled times
+ * give the handoff latency percentiles, and their inverse the throughput.
+ * {@link #handoff(Producer)} has a single producer, and
+ * {@link #contendedHandoff(Producer)} has several, which each wait for their
+ * own objects.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.SampleTime, Mode.Throughput })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SinkBenchmark {
+
+    /**
+     * The sinks being compared, with the number of worker threads for the
+     * ones that have more than one.
+     */
+    public enum Type {
+        SINGLE_THREADED, MULTI_THREADED_1, MULTI_THREADED_4, RING_BUFFER
+    }
+
+    @Param({ "SINGLE_THREADED", "MULTI_THREADED_1", "MULTI_THREADED_4", "RING_BUFFER" })
+    Type                  type;
+
+    @Param({ "24", "4096" })
+    int                   size;
+
+    private Sink<Handoff> sink;
+    private Runnable      stop;
+
+    /**
+     * An object handed over by one producer thread, which counts how many
+     * times it has been processed.
+     */
+    static class Handoff {
+
+        final Payload    payload;
+        final AtomicLong processed = new AtomicLong();
+
+        Handoff(Payload payload) {
+            this.payload = payload;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Producer {
+
+        Handoff handoff;
+
+        @Setup
+        public void setup(SinkBenchmark benchmark) {
+            handoff = new Handoff(new Payload(benchmark.size));
+        }
+    }
+
+    @Setup
+    public void setup() {
+        Sink<Handoff> counter = obj -> obj.processed.incrementAndGet();
+        switch (type) {
+            case SINGLE_THREADED:
+                Sinks.SingleThreadedSink<Handoff> single = Sinks.newSingleThreadedSink(counter);
+                sink = single;
+                stop = single::stop;
+                break;
+            case MULTI_THREADED_1:
+            case MULTI_THREADED_4:
+                Sinks.MultiThreadedSink<Handoff> multi = Sinks.newMultiThreadedSink(counter,
+                        type == Type.MULTI_THREADED_1 ? 1 : 4);
+                sink = multi;
+                stop = multi::stop;
+                break;
+            default:
+                RingBufferSink<Handoff> ring = Sinks.newRingBufferSink(counter, 1024,
+                        RingBufferSink.Producers.MULTI, RingBufferSink.WaitStrategy.YIELD,
+                        RingBufferSink.OverflowPolicy.BLOCK);
+                sink = ring;
+                stop = ring::stop;
+                break;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        stop.run();
+    }
+
+    @Benchmark
+    public void handoff(Producer producer) {
+        handoff(producer.handoff);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void contendedHandoff(Producer producer) {
+        handoff(producer.handoff);
+    }
+
+    private void handoff(Handoff handoff) {
+        long target = handoff.processed.get() + 1;
+        sink.process(handoff);
+        while (handoff.processed.get() < target) {
+            Thread.yield();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package io.jeti.streams.benchmarks;
+
+import io.jeti.streams.StreamReader;
+import io.jeti.streams.StreamWriter;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Writes one {@link Payload} to a loopback socket and reads it back on the
+ * other end, measuring the per-packet latency of each format.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SocketRoundTripBenchmark {
+
+    @Param({ "DATA_PACKET", "COMPACT", "SERIALIZABLE" })
+    Format               format;
+
+    @Param({ "24", "256", "4096" })
+    int                  size;
+
+    @Param({ "true", "false" })
+    boolean              buffered;
+
+    private Socket       client;
+    private Socket       server;
+    private StreamWriter writer;
+    private StreamReader reader;
+    private Object       out;
+    private Object       in;
+    private Payload      payload;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            client = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+            server = serverSocket.accept();
+        }
+        client.setTcpNoDelay(true);
+        OutputStream outputStream = client.getOutputStream();
+        writer = format.writer();
+        out = writer.preLoop(buffered ? new BufferedOutputStream(outputStream) : outputStream);
+        writer.flush(out);
+        reader = format.reader(buffered);
+        in = reader.preLoop(server.getInputStream());
+        payload = new Payload(size);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Object roundTrip() throws IOException, ClassNotFoundException {
+        writer.writeOne(out, payload);
+        writer.flush(out);
+        return reader.readOne(in);
+    }
+}
@@ -0,0 +1,463 @@
+package io.jeti.streams.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates the codecs and the {@code GeneratedDataPackets} registries for
+ * classes annotated with {@code io.jeti.streams.Packet}. See the documentation
+ * of that annotation for what is generated, and which fields are supported.
+ */
+@SupportedAnnotationTypes(PacketProcessor.PACKET)
+public class PacketProcessor extends AbstractProcessor {
+
+    static final String         PACKET      = "io.jeti.streams.Packet";
+    static final String         NULLABLE    = "io.jeti.streams.Packet.Nullable";
+    static final String         DATA_PACKET = "io.jeti.streams.DataPacket";
+    static final String         REGISTRY    = "GeneratedDataPackets";
+
+    private final Set<String>   registries  = new HashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement packet = processingEnv.getElementUtils().getTypeElement(PACKET);
+        if (packet == null) {
+            return false;
+        }
+        Map<String, List<TypeElement>> packages = new LinkedHashMap<>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(packet)) {
+            TypeElement type = (TypeElement) element;
+            try {
+                writeCodec(type);
+                if (isDataPacket(type.asType())) {
+                    packages.computeIfAbsent(packageName(type), key -> new ArrayList<>()).add(type);
+                }
+            } catch (UnsupportedException e) {
+                error(e.element, e.getMessage());
+            } catch (IOException e) {
+                error(type, "Could not write the codec: " + e.getMessage());
+            }
+        }
+        for (Map.Entry<String, List<TypeElement>> entry : packages.entrySet()) {
+            if (!registries.add(entry.getKey())) {
+                error(entry.getValue().get(0), "The " + REGISTRY + " of this package was already "
+                        + "generated in an earlier round");
+                continue;
+            }
+            try {
+                writeRegistry(entry.getKey(), entry.getValue());
+            } catch (IOException e) {
+                error(entry.getValue().get(0), "Could not write the registry: " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Thrown when a {@code Packet} class or one of its fields is not
+     * supported.
+     */
+    private static class UnsupportedException extends Exception {
+
+        private static final long       serialVersionUID = 1L;
+
+        private final transient Element element;
+
+        private UnsupportedException(Element element, String message) {
+            super(message);
+            this.element = element;
+        }
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private String packageName(TypeElement type) {
+        return processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+    }
+
+    /**
+     * @return The simple name of the codec class, such as {@code FooCodec}, or
+     *         {@code Outer_InnerCodec} for a nested class.
+     */
+    private String codecName(TypeElement type) {
+        String name = type.getSimpleName().toString();
+        Element enclosing = type.getEnclosingElement();
+        while (enclosing.getKind().isClass() || enclosing.getKind().isInterface()) {
+            name = enclosing.getSimpleName() + "_" + name;
+            enclosing = enclosing.getEnclosingElement();
+        }
+        return name + "Codec";
+    }
+
+    private boolean isDataPacket(TypeMirror type) {
+        TypeElement dataPacket = processingEnv.getElementUtils().getTypeElement(DATA_PACKET);
+        return dataPacket != null && processingEnv.getTypeUtils().isAssignable(
+                processingEnv.getTypeUtils().erasure(type),
+                processingEnv.getTypeUtils().erasure(dataPacket.asType()));
+    }
+
+    private static boolean hasAnnotation(Element element, String name) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            TypeElement annotation = (TypeElement) mirror.getAnnotationType().asElement();
+            if (annotation.getQualifiedName().contentEquals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasNoArgConstructor(TypeElement type) {
+        for (ExecutableElement constructor : ElementFilter
+                .constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty()
+                    && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<VariableElement> fields(TypeElement type) throws UnsupportedException {
+        List<VariableElement> fields = new ArrayList<>();
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            Set<Modifier> modifiers = field.getModifiers();
+            if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) {
+                continue;
+            }
+            if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.FINAL)) {
+                throw new UnsupportedException(field,
+                        "The fields of a @Packet must not be private or final");
+            }
+            fields.add(field);
+        }
+        return fields;
+    }
+
+    private void writeCodec(TypeElement type) throws UnsupportedException, IOException {
+        if (type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.ABSTRACT)
+                || !type.getTypeParameters().isEmpty()) {
+            throw new UnsupportedException(type,
+                    "A @Packet must be a concrete class without type parameters");
+        }
+        if (type.getNestingKind().isNested() && !type.getModifiers().contains(Modifier.STATIC)) {
+            throw new UnsupportedException(type, "A nested @Packet must be static");
+        }
+        if (!hasNoArgConstructor(type)) {
+            throw new UnsupportedException(type, "A @Packet needs a no-argument constructor");
+        }
+        String packageName = packageName(type);
+        String codec = codecName(type);
+        String name = type.getQualifiedName().toString();
+
+        Code write = new Code();
+        Code read = new Code();
+        for (VariableElement field : fields(type)) {
+            String access = "packet." + field.getSimpleName();
+            if (hasAnnotation(field, NULLABLE)) {
+                if (field.asType().getKind().isPrimitive()) {
+                    throw new UnsupportedException(field, "A primitive field cannot be nullable");
+                }
+                write.line("stream.writeBoolean(" + access + " != null);");
+                write.open("if (" + access + " != null) {");
+                read.open("if (stream.readBoolean()) {");
+                emitWrite(field, field.asType(), access, write);
+                emitRead(field, field.asType(), access, read);
+                write.close("}");
+                read.close("} else {");
+                read.indent++;
+                read.line(access + " = null;");
+                read.close("}");
+            } else {
+                emitWrite(field, field.asType(), access, write);
+                emitRead(field, field.asType(), access, read);
+            }
+        }
+
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("import java.io.DataInputStream;\n")
+                .append("import java.io.DataOutputStream;\n")
+                .append("import java.io.IOException;\n\n")
+                .append("/**\n * Generated by ").append(PacketProcessor.class.getName())
+                .append(" for {@link ").append(name).append("}. Do not edit.\n */\n")
+                .append("public final class ").append(codec).append(" {\n\n")
+                .append("    private ").append(codec).append("() {\n    }\n\n")
+                .append("    public static void write(").append(name)
+                .append(" packet, DataOutputStream stream) throws IOException {\n")
+                .append(write).append("    }\n\n")
+                .append("    public static ").append(name)
+                .append(" read(DataInputStream stream) throws IOException {\n")
+                .append("        ").append(name).append(" packet = new ").append(name)
+                .append("();\n        readInto(stream, packet);\n        return packet;\n    }\n\n")
+                .append("    public static void readInto(DataInputStream stream, ").append(name)
+                .append(" packet) throws IOException {\n").append(read).append("    }\n}\n");
+
+        String fileName = packageName.isEmpty() ? codec : packageName + "." + codec;
+        try (Writer writer = processingEnv.getFiler().createSourceFile(fileName, type)
+                .openWriter()) {
+            writer.write(source.toString());
+        }
+    }
+
+    private void writeRegistry(String packageName, List<TypeElement> types) throws IOException {
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("import ").append(DATA_PACKET).append(";\n")
+                .append("import java.util.HashMap;\n")
+                .append("import java.util.Map;\n\n")
+                .append("/**\n * Generated by ").append(PacketProcessor.class.getName())
+                .append(". Do not edit.\n */\n")
+                .append("public final class ").append(REGISTRY).append(" {\n\n")
+                .append("    private ").append(REGISTRY).append("() {\n    }\n\n")
+                .append("    /**\n     * @return A new dataPacketMap containing every @Packet")
+                .append(" DataPacket in this package.\n     */\n")
+                .append("    public static Map<String, DataPacket> map() {\n")
+                .append("        Map<String, DataPacket> map = new HashMap<>();\n");
+        for (TypeElement type : types) {
+            String name = type.getQualifiedName().toString();
+            source.append("        map.put(").append(name).append(".class.getName(), new ")
+                    .append(name).append("());\n");
+        }
+        source.append("        return map;\n    }\n\n")
+                .append("    /**\n     * Add every @Packet DataPacket in this package to the")
+                .append(" specified dataPacketMap.\n     */\n")
+                .append("    public static void addTo(Map<String, DataPacket> dataPacketMap) {\n")
+                .append("        dataPacketMap.putAll(map());\n    }\n}\n");
+        String fileName = packageName.isEmpty() ? REGISTRY : packageName + "." + REGISTRY;
+        try (Writer writer = processingEnv.getFiler()
+                .createSourceFile(fileName, types.toArray(new Element[0])).openWriter()) {
+            writer.write(source.toString());
+        }
+    }
+
+    /**
+     * The body of a generated method, indented by depth.
+     */
+    private static class Code {
+
+        private final StringBuilder builder = new StringBuilder();
+        private int                 indent  = 2;
+        private int                 depth;
+
+        private void line(String line) {
+            for (int i = 0; i < indent; i++) {
+                builder.append("    ");
+            }
+            builder.append(line).append('\n');
+        }
+
+        private void open(String line) {
+            line(line);
+            indent++;
+        }
+
+        private void close(String line) {
+            indent--;
+            line(line);
+        }
+
+        @Override
+        public String toString() {
+            return builder.toString();
+        }
+    }
+
+    private static String bulkSuffix(TypeKind kind) {
+        switch (kind) {
+            case DOUBLE:
+                return "Doubles";
+            case FLOAT:
+                return "Floats";
+            case LONG:
+                return "Longs";
+            case INT:
+                return "Ints";
+            case SHORT:
+                return "Shorts";
+            default:
+                return null;
+        }
+    }
+
+    private static String primitiveSuffix(TypeKind kind) {
+        switch (kind) {
+            case BOOLEAN:
+                return "Boolean";
+            case BYTE:
+                return "Byte";
+            case SHORT:
+                return "Short";
+            case CHAR:
+                return "Char";
+            case INT:
+                return "Int";
+            case LONG:
+                return "Long";
+            case FLOAT:
+                return "Float";
+            case DOUBLE:
+                return "Double";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Emit the code which writes the expression, of the specified type.
+     */
+    private void emitWrite(Element field, TypeMirror type, String expr, Code code)
+            throws UnsupportedException {
+        TypeKind kind = type.getKind();
+        if (kind.isPrimitive()) {
+            code.line("stream.write" + primitiveSuffix(kind) + "(" + expr + ");");
+        } else if (kind == TypeKind.ARRAY) {
+            TypeMirror component = ((ArrayType) type).getComponentType();
+            TypeKind componentKind = component.getKind();
+            code.line("stream.writeInt(" + expr + ".length);");
+            if (componentKind == TypeKind.BYTE) {
+                code.line("stream.write(" + expr + ");");
+            } else if (bulkSuffix(componentKind) != null) {
+                code.line("io.jeti.streams.PacketOutputStream.of(stream).write"
+                        + bulkSuffix(componentKind) + "(" + expr + ");");
+            } else {
+                String index = "i" + code.depth++;
+                code.open("for (int " + index + " = 0; " + index + " < " + expr + ".length; "
+                        + index + "++) {");
+                emitWrite(field, component, expr + "[" + index + "]", code);
+                code.close("}");
+                code.depth--;
+            }
+        } else if (kind == TypeKind.DECLARED) {
+            TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+            String name = element.getQualifiedName().toString();
+            TypeMirror unboxed = unboxed(type);
+            if (unboxed != null) {
+                code.line("stream.write" + primitiveSuffix(unboxed.getKind()) + "(" + expr + ");");
+            } else if (name.equals("java.lang.String")) {
+                code.line("stream.writeUTF(" + expr + ");");
+            } else if (element.getKind() == ElementKind.ENUM) {
+                code.line("io.jeti.streams.Varints.writeVarInt(stream, " + expr + ".ordinal());");
+            } else if (hasAnnotation(element, PACKET)) {
+                code.line(packageQualifiedCodec(element) + ".write(" + expr + ", stream);");
+            } else if (isDataPacket(type) && hasNoArgConstructor(element)) {
+                code.line(expr + ".write(stream);");
+            } else {
+                throw new UnsupportedException(field, "Unsupported @Packet field type: " + type);
+            }
+        } else {
+            throw new UnsupportedException(field, "Unsupported @Packet field type: " + type);
+        }
+    }
+
+    /**
+     * Emit the code which reads a value of the specified type, and assigns it
+     * to the target.
+     */
+    private void emitRead(Element field, TypeMirror type, String target, Code code)
+            throws UnsupportedException {
+        TypeKind kind = type.getKind();
+        if (kind.isPrimitive()) {
+            code.line(target + " = stream.read" + primitiveSuffix(kind) + "();");
+        } else if (kind == TypeKind.ARRAY) {
+            TypeMirror component = ((ArrayType) type).getComponentType();
+            TypeKind componentKind = component.getKind();
+            code.line(target + " = " + newArray(component, "stream.readInt()") + ";");
+            if (componentKind == TypeKind.BYTE) {
+                code.line("stream.readFully(" + target + ");");
+            } else if (bulkSuffix(componentKind) != null) {
+                code.line("io.jeti.streams.PacketInputStream.of(stream).read"
+                        + bulkSuffix(componentKind) + "(" + target + ");");
+            } else {
+                String index = "i" + code.depth++;
+                code.open("for (int " + index + " = 0; " + index + " < " + target + ".length; "
+                        + index + "++) {");
+                emitRead(field, component, target + "[" + index + "]", code);
+                code.close("}");
+                code.depth--;
+            }
+        } else if (kind == TypeKind.DECLARED) {
+            TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+            String name = element.getQualifiedName().toString();
+            TypeMirror unboxed = unboxed(type);
+            if (unboxed != null) {
+                code.line(target + " = stream.read" + primitiveSuffix(unboxed.getKind()) + "();");
+            } else if (name.equals("java.lang.String")) {
+                code.line(target + " = stream.readUTF();");
+            } else if (element.getKind() == ElementKind.ENUM) {
+                code.line(target + " = " + name
+                        + ".values()[io.jeti.streams.Varints.readVarInt(stream)];");
+            } else if (hasAnnotation(element, PACKET)) {
+                code.line(target + " = " + packageQualifiedCodec(element) + ".read(stream);");
+            } else if (isDataPacket(type) && hasNoArgConstructor(element)) {
+                code.line(target + " = (" + name + ") new " + name + "().read(stream);");
+            } else {
+                throw new UnsupportedException(field, "Unsupported @Packet field type: " + type);
+            }
+        } else {
+            throw new UnsupportedException(field, "Unsupported @Packet field type: " + type);
+        }
+    }
+
+    /**
+     * @return An expression creating an array of the component type with the
+     *         specified length, such as {@code new int[length][]}.
+     */
+    private String newArray(TypeMirror component, String length) {
+        String dimensions = "";
+        while (component.getKind() == TypeKind.ARRAY) {
+            dimensions += "[]";
+            component = ((ArrayType) component).getComponentType();
+        }
+        String name = component.getKind().isPrimitive() ? component.toString()
+                : ((TypeElement) ((DeclaredType) component).asElement()).getQualifiedName()
+                        .toString();
+        return "new " + name + "[" + length + "]" + dimensions;
+    }
+
+    private TypeMirror unboxed(TypeMirror type) {
+        try {
+            return processingEnv.getTypeUtils().unboxedType(type);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private String packageQualifiedCodec(TypeElement type) {
+        String packageName = packageName(type);
+        return packageName.isEmpty() ? codecName(type) : packageName + "." + codecName(type);
+    }
+}
@@ -0,0 +1,185 @@
+package io.jeti.streams;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * A {@link DataPacket} carrying one piece of a file, for sending files which
+ * are too large to hold on the heap as a single {@code byte[]}. A file is cut
+ * into chunks with {@link #split(long, Path, int)}, and each chunk only holds
+ * the position of its bytes in the file. The bytes themselves are read from
+ * the file while the chunk is being written, with
+ * {@link PacketOutputStream#transferFrom(FileChannel, long, long)}, and
+ * written into a file by a {@link BlobStore} while it is being read, with
+ * {@link PacketInputStream#transferTo(FileChannel, long, long)}. When the
+ * underlying streams are backed by channels (see {@link ByteChannels}), the
+ * bytes never pass through the heap at all.
+ * </p>
+ * <p>
+ * Since every chunk is a separate packet, other packets can be written
+ * between the chunks of a file. Putting the chunks on a low priority lane of
+ * a {@link PriorityLanes} queue keeps a large transfer from holding up small
+ * packets for longer than one chunk:
+ * </p>
+ * <pre>
+ * for (BlobChunk chunk : BlobChunk.split(id, path, 1 &lt;&lt; 18)) {
+ *     lanes.lane(1).put(chunk);
+ * }
+ * </pre>
+ * <p>
+ * On the receiving side, register {@link BlobStore#prototype()} under the
+ * name of this class in the {@code dataPacketMap} of the reader. Chunks are
+ * written as:
+ * </p>
+ * <pre>
+ * long blobId, UTF name, long totalLength, long offset, int length, bytes
+ * </pre>
+ * <p>
+ * The bytes are not part of the chunk object, so Java serialization does not
+ * carry them, and neither the file nor the {@link BlobStore} is serialized: a
+ * deserialized chunk only describes where its bytes belong, and cannot be
+ * written again.
+ * </p>
+ */
+public class BlobChunk implements DataPacket<BlobChunk> {
+
+    private static final long         serialVersionUID = 1L;
+
+    private final long                blobId;
+    private final String              name;
+    private final long                totalLength;
+    private final long                offset;
+    private final int                 length;
+    private final transient Path      path;
+    private final boolean             complete;
+    private final transient BlobStore store;
+
+    private BlobChunk(long blobId, String name, long totalLength, long offset, int length,
+            Path path, boolean complete, BlobStore store) {
+        this.blobId = blobId;
+        this.name = name;
+        this.totalLength = totalLength;
+        this.offset = offset;
+        this.length = length;
+        this.path = path;
+        this.complete = complete;
+        this.store = store;
+    }
+
+    /**
+     * The prototype of a {@link BlobStore}.
+     */
+    BlobChunk(BlobStore store) {
+        this(0, "", 0, 0, 0, null, false, store);
+    }
+
+    /**
+     * A chunk received by a {@link BlobStore}.
+     */
+    BlobChunk(long blobId, String name, long totalLength, long offset, int length, Path path,
+            boolean complete) {
+        this(blobId, name, totalLength, offset, length, path, complete, null);
+    }
+
+    /**
+     * Cut a file into chunks of at most {@code chunkBytes} bytes. Only the
+     * size of the file is read here; its contents are read as each chunk is
+     * written, so the file must not change until then.
+     *
+     * @param blobId: Identifies the file on the receiving side, so it must be
+     *            unique among the files being sent over the same stream.
+     */
+    public static List<BlobChunk> split(long blobId, Path file, int chunkBytes)
+            throws IOException {
+        if (chunkBytes < 1) {
+            throw new IllegalArgumentException("The chunk size must be positive");
+        }
+        long size = Files.size(file);
+        Path fileName = file.getFileName();
+        String name = fileName == null ? "" : fileName.toString();
+        List<BlobChunk> chunks = new ArrayList<>();
+        long offset = 0;
+        do {
+            int length = (int) Math.min(chunkBytes, size - offset);
+            chunks.add(new BlobChunk(blobId, name, size, offset, length, file, false, null));
+            offset += length;
+        } while (offset < size);
+        return chunks;
+    }
+
+    @Override
+    public void write(DataOutputStream stream) throws IOException {
+        if (path == null) {
+            throw new IOException("Only the chunks returned by split can be written");
+        }
+        stream.writeLong(blobId);
+        stream.writeUTF(name);
+        stream.writeLong(totalLength);
+        stream.writeLong(offset);
+        stream.writeInt(length);
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            PacketOutputStream.of(stream).transferFrom(file, offset, length);
+        }
+    }
+
+    @Override
+    public BlobChunk read(DataInputStream stream) throws IOException {
+        if (store == null) {
+            throw new IOException("Only the prototype of a BlobStore can read chunks");
+        }
+        long blobId = stream.readLong();
+        String name = stream.readUTF();
+        long totalLength = stream.readLong();
+        long offset = stream.readLong();
+        int length = stream.readInt();
+        return store.receive(PacketInputStream.of(stream), blobId, name, totalLength, offset,
+                length);
+    }
+
+    public long blobId() {
+        return blobId;
+    }
+
+    /**
+     * @return The file name of the blob, without any directories.
+     */
+    public String name() {
+        return name;
+    }
+
+    public long totalLength() {
+        return totalLength;
+    }
+
+    public long offset() {
+        return offset;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return The file that the chunk is read from, or, for a received chunk,
+     *         the file that it was written to. Null for a deserialized chunk.
+     */
+    public Path path() {
+        return path;
+    }
+
+    /**
+     * @return Whether this is the chunk which completed its blob on the
+     *         receiving side.
+     */
+    public boolean complete() {
+        return complete;
+    }
+}
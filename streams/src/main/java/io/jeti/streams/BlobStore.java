@@ -0,0 +1,105 @@
+package io.jeti.streams;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Receives the {@link BlobChunk}s of files into a directory. Register
+ * {@link #prototype()} in the {@code dataPacketMap} of a reader under the name
+ * of the {@link BlobChunk} class. Every chunk is written straight into its
+ * file as it is read, and the {@link BlobChunk} passed on by the reader only
+ * describes it. Once all of the bytes of a file have arrived, the file is
+ * closed, and the last chunk reports {@link BlobChunk#complete()}. Each file is
+ * named after the id and the name of its blob.
+ */
+public class BlobStore implements Closeable {
+
+    /**
+     * A file which is still being received.
+     */
+    private static class Incoming {
+
+        private final FileChannel channel;
+        private final Path        path;
+        private long              received;
+
+        private Incoming(FileChannel channel, Path path) {
+            this.channel = channel;
+            this.path = path;
+        }
+    }
+
+    private final Path                directory;
+    private final BlobChunk           prototype = new BlobChunk(this);
+    private final Map<Long, Incoming> incoming  = new HashMap<>();
+
+    public BlobStore(Path directory) {
+        if (directory == null) {
+            throw new NullPointerException("The directory cannot be null");
+        }
+        this.directory = directory;
+    }
+
+    /**
+     * @return The {@link BlobChunk} to register in the {@code dataPacketMap}.
+     */
+    public BlobChunk prototype() {
+        return prototype;
+    }
+
+    /**
+     * @return The file that a blob is written to.
+     */
+    public Path path(long blobId, String name) {
+        Path fileName = name.isEmpty() ? null
+                : directory.getFileSystem().getPath(name).getFileName();
+        return directory.resolve(blobId + (fileName == null ? ".blob" : "-" + fileName));
+    }
+
+    synchronized BlobChunk receive(PacketInputStream stream, long blobId, String name,
+            long totalLength, long offset, int length) throws IOException {
+        if (length < 0 || offset < 0 || offset + length > totalLength) {
+            throw new IOException("Received a chunk outside of its blob: " + offset + "+" + length
+                    + " of " + totalLength);
+        }
+        Incoming blob = incoming.get(blobId);
+        if (blob == null) {
+            Path path = path(blobId, name);
+            blob = new Incoming(FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), path);
+            incoming.put(blobId, blob);
+        }
+        stream.transferTo(blob.channel, offset, length);
+        blob.received += length;
+        boolean complete = blob.received >= totalLength;
+        if (complete) {
+            incoming.remove(blobId);
+            blob.channel.close();
+        }
+        return new BlobChunk(blobId, name, totalLength, offset, length, blob.path, complete);
+    }
+
+    /**
+     * Close the files which are still being received.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        IOException failure = null;
+        for (Incoming blob : incoming.values()) {
+            try {
+                blob.channel.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        incoming.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package io.jeti.streams;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * A {@link BroadcastWriter} writes the same objects to many
+ * {@link OutputStream}s, while encoding each object only once. Every object
+ * passed to {@link #publish(Object)} is encoded with the {@link StreamWriter}
+ * into an immutable byte array, which is then queued for every subscriber.
+ * Each subscriber has its own bounded queue and its own writing loop, which
+ * drains its queue and flushes once per batch, so a slow subscriber does not
+ * hold up the others. What happens when a subscriber's queue is full is
+ * decided by its {@link SlowConsumerPolicy}.
+ * </p>
+ * <p>
+ * Since the same bytes are sent to every subscriber, including subscribers
+ * which are added later, the {@link StreamWriter} must encode every object on
+ * its own. For example, the {@link DataPacketStreamWriter} and the
+ * {@link FramedDataPacketStreamWriter} are fine, but the
+ * {@link CompactDataPacketStreamWriter} and the
+ * {@link SerializableStreamWriter} are not, because they refer back to
+ * earlier objects.
+ * </p>
+ */
+public class BroadcastWriter<S, O> {
+
+    /**
+     * What to do when a subscriber's queue is full.
+     */
+    public enum SlowConsumerPolicy {
+
+        /** Skip the new object for this subscriber. */
+        DROP,
+
+        /** Close the subscriber's {@link OutputStream} and remove it. */
+        DISCONNECT,
+
+        /**
+         * Discard the oldest queued object to make room, so that the
+         * subscriber catches up with the most recent objects.
+         */
+        COALESCE
+    }
+
+    private final StreamWriter<S, O>    encoder;
+    private final ByteArrayOutputStream encoded     = new ByteArrayOutputStream();
+    private final S                     encodedStream;
+    private final Executor              executor;
+    private final List<Subscriber>      subscribers = new CopyOnWriteArrayList<>();
+
+    public BroadcastWriter(StreamWriter<S, O> encoder) throws IOException {
+        this(encoder, task -> new Thread(task).start());
+    }
+
+    /**
+     * @param executor: The {@link Executor} which runs the writing loop of
+     *            every subscriber.
+     */
+    public BroadcastWriter(StreamWriter<S, O> encoder, Executor executor) throws IOException {
+        if (encoder == null) {
+            throw new NullPointerException("The encoder cannot be null");
+        }
+        if (executor == null) {
+            throw new NullPointerException("The executor cannot be null");
+        }
+        this.encoder = encoder;
+        this.executor = executor;
+        this.encodedStream = encoder.preLoop(encoded);
+        encoder.flush(encodedStream);
+        encoded.reset();
+    }
+
+    /**
+     * Encode the object once, and queue the bytes for every subscriber.
+     */
+    public void publish(O obj) throws IOException {
+        byte[] bytes;
+        synchronized (encoded) {
+            encoder.writeOne(encodedStream, obj);
+            encoder.flush(encodedStream);
+            bytes = encoded.toByteArray();
+            encoded.reset();
+        }
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(bytes);
+        }
+    }
+
+    /**
+     * Start writing every object published from now on to the
+     * {@link OutputStream}, until the returned {@link Subscriber} is removed.
+     *
+     * @param capacity: The number of objects that can be queued for this
+     *            subscriber before its {@link SlowConsumerPolicy} kicks in.
+     */
+    public Subscriber subscribe(OutputStream outputStream, int capacity,
+            SlowConsumerPolicy policy) {
+        if (outputStream == null) {
+            throw new NullPointerException("The outputStream cannot be null");
+        }
+        if (policy == null) {
+            throw new NullPointerException("The policy cannot be null");
+        }
+        Subscriber subscriber = new Subscriber(outputStream, capacity, policy);
+        subscribers.add(subscriber);
+        executor.execute(subscriber::run);
+        return subscriber;
+    }
+
+    /**
+     * @return The number of current subscribers.
+     */
+    public int subscribers() {
+        return subscribers.size();
+    }
+
+    /**
+     * Remove every subscriber.
+     */
+    public void stop() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.remove();
+        }
+    }
+
+    /**
+     * A single {@link OutputStream} which receives the published objects.
+     */
+    public class Subscriber {
+
+        private final OutputStream          raw;
+        private final BufferedOutputStream  outputStream;
+        private final BlockingQueue<byte[]> queue;
+        private final SlowConsumerPolicy    policy;
+        private final LongAdder             dropped = new LongAdder();
+        private Thread                      thread;
+        private volatile boolean            removed;
+
+        private Subscriber(OutputStream outputStream, int capacity, SlowConsumerPolicy policy) {
+            this.raw = outputStream;
+            this.outputStream = new BufferedOutputStream(outputStream);
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.policy = policy;
+        }
+
+        private void offer(byte[] bytes) {
+            while (!queue.offer(bytes)) {
+                switch (policy) {
+                    case DROP:
+                        dropped.increment();
+                        return;
+                    case DISCONNECT:
+                        remove();
+                        return;
+                    default:
+                        if (queue.poll() != null) {
+                            dropped.increment();
+                        }
+                        break;
+                }
+            }
+        }
+
+        private void run() {
+            try {
+                synchronized (this) {
+                    thread = Thread.currentThread();
+                }
+                while (!removed) {
+                    outputStream.write(queue.take());
+                    byte[] bytes;
+                    while ((bytes = queue.poll()) != null) {
+                        outputStream.write(bytes);
+                    }
+                    outputStream.flush();
+                }
+            } catch (InterruptedException e) {
+                /* We were removed. */
+            } catch (Exception e) {
+                if (!removed) {
+                    e.printStackTrace();
+                }
+            } finally {
+                subscribers.remove(this);
+                try {
+                    outputStream.close();
+                } catch (IOException e) {
+                    if (!removed) {
+                        e.printStackTrace();
+                    }
+                }
+                synchronized (this) {
+                    thread = null;
+                    Thread.interrupted();
+                }
+            }
+        }
+
+        /**
+         * Stop writing to this subscriber, and close its {@link OutputStream}.
+         * The {@link OutputStream} is closed right away, rather than by the
+         * writing loop, since the loop may be stuck in a write to a consumer
+         * which stopped reading, which an interrupt does not break.
+         */
+        public synchronized void remove() {
+            removed = true;
+            subscribers.remove(this);
+            try {
+                raw.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+
+        /**
+         * @return The number of objects that are waiting to be written.
+         */
+        public int size() {
+            return queue.size();
+        }
+
+        /**
+         * @return The number of objects which this subscriber missed because
+         *         its queue was full.
+         */
+        public long dropped() {
+            return dropped.sum();
+        }
+    }
+}
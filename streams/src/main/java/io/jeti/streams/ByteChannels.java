@@ -0,0 +1,188 @@
+package io.jeti.streams;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * <p>
+ * Streams over {@link java.nio.channels} which still let the
+ * {@link PacketOutputStream#transferFrom(java.nio.channels.FileChannel, long, long)}
+ * and
+ * {@link PacketInputStream#transferTo(java.nio.channels.FileChannel, long, long)}
+ * methods get at the channel underneath, so that file contents can be moved
+ * with {@link java.nio.channels.FileChannel#transferTo} and
+ * {@link java.nio.channels.FileChannel#transferFrom}, without being copied
+ * through the heap. For example, wrap a blocking
+ * {@link java.nio.channels.SocketChannel} with
+ * {@link #newOutputStream(WritableByteChannel)} before passing it to a
+ * {@link StreamWriterManager}.
+ * </p>
+ * <p>
+ * {@link FileOutputStream}s and {@link FileInputStream}s are recognized as
+ * well. Any other stream, or a buffering stream in between, simply means that
+ * the bytes are copied instead.
+ * </p>
+ */
+public final class ByteChannels {
+
+    private ByteChannels() {
+    }
+
+    /**
+     * An {@link OutputStream} which can hand out the channel it writes to.
+     */
+    interface WritableBacked {
+
+        /**
+         * Write out anything buffered, and return the channel underneath, or
+         * null if there is none.
+         */
+        WritableByteChannel channel() throws IOException;
+
+        /**
+         * Called after {@code bytes} bytes were written straight to the
+         * channel returned by {@link #channel()}, bypassing the stream.
+         */
+        default void transferred(long bytes) {
+        }
+    }
+
+    /**
+     * An {@link InputStream} which can hand out the channel it reads from.
+     */
+    interface ReadableBacked {
+
+        /**
+         * @return The channel underneath, or null if there is none, or the
+         *         stream has already buffered bytes from it.
+         */
+        ReadableByteChannel channel();
+    }
+
+    public static OutputStream newOutputStream(WritableByteChannel channel) {
+        if (channel == null) {
+            throw new NullPointerException("The channel cannot be null");
+        }
+        return new ChannelOutputStream(channel);
+    }
+
+    public static InputStream newInputStream(ReadableByteChannel channel) {
+        if (channel == null) {
+            throw new NullPointerException("The channel cannot be null");
+        }
+        return new ChannelInputStream(channel);
+    }
+
+    /**
+     * @return The channel that the stream writes straight through to, or
+     *         null if there is none.
+     */
+    static WritableByteChannel channelOf(OutputStream stream) throws IOException {
+        if (stream instanceof WritableBacked) {
+            return ((WritableBacked) stream).channel();
+        } else if (stream instanceof FileOutputStream) {
+            return ((FileOutputStream) stream).getChannel();
+        }
+        return null;
+    }
+
+    /**
+     * Tell the stream that {@code bytes} bytes were written straight to the
+     * channel returned by {@link #channelOf(OutputStream)}.
+     */
+    static void transferred(OutputStream stream, long bytes) {
+        if (stream instanceof WritableBacked) {
+            ((WritableBacked) stream).transferred(bytes);
+        }
+    }
+
+    /**
+     * @return The channel that the stream reads straight from, or null if
+     *         there is none.
+     */
+    static ReadableByteChannel channelOf(InputStream stream) {
+        if (stream instanceof ReadableBacked) {
+            return ((ReadableBacked) stream).channel();
+        } else if (stream instanceof FileInputStream) {
+            return ((FileInputStream) stream).getChannel();
+        }
+        return null;
+    }
+
+    private static class ChannelOutputStream extends OutputStream implements WritableBacked {
+
+        private final WritableByteChannel channel;
+        private final byte[]              single = new byte[1];
+
+        private ChannelOutputStream(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            single[0] = (byte) b;
+            write(single, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        @Override
+        public WritableByteChannel channel() {
+            return channel;
+        }
+    }
+
+    private static class ChannelInputStream extends InputStream implements ReadableBacked {
+
+        private final ReadableByteChannel channel;
+        private final byte[]              single = new byte[1];
+
+        private ChannelInputStream(ReadableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int n;
+            do {
+                n = channel.read(ByteBuffer.wrap(b, off, len));
+            } while (n == 0);
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        @Override
+        public ReadableByteChannel channel() {
+            return channel;
+        }
+    }
+}
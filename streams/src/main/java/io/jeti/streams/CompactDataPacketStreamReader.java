@@ -0,0 +1,139 @@
+package io.jeti.streams;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the streams written by a {@link CompactDataPacketStreamWriter}. The
+ * class names are only looked up in the {@code dataPacketMap} once, when they
+ * are first defined. After that, the varint id in front of each packet indexes
+ * straight into an array of {@link DataPacket} prototypes.
+ */
+public class CompactDataPacketStreamReader implements StreamReader<DataInputStream, Object> {
+
+    private final Map<String, DataPacket> dataPacketMap;
+    private final List<String>            registeredClassNames;
+    private final boolean                 buffered;
+    private static final boolean          bufferedDefault = true;
+    private DataPacket[]                  prototypes      = new DataPacket[16];
+    private int                           nextId;
+
+    public CompactDataPacketStreamReader(Map<String, DataPacket> dataPacketMap) {
+        this(dataPacketMap, Collections.<String>emptyList(), bufferedDefault);
+    }
+
+    public CompactDataPacketStreamReader(Map<String, DataPacket> dataPacketMap, boolean buffered) {
+        this(dataPacketMap, Collections.<String>emptyList(), buffered);
+    }
+
+    /**
+     * @param registeredClassNames: The same list of class names that was given
+     *            to the {@link CompactDataPacketStreamWriter}.
+     */
+    public CompactDataPacketStreamReader(Map<String, DataPacket> dataPacketMap,
+            List<String> registeredClassNames, boolean buffered) {
+        if (dataPacketMap == null) {
+            throw new NullPointerException("The dataPacketMap cannot be null");
+        }
+        if (registeredClassNames == null) {
+            throw new NullPointerException("The registered class names cannot be null");
+        }
+        this.dataPacketMap = dataPacketMap;
+        this.registeredClassNames = registeredClassNames;
+        this.buffered = buffered;
+    }
+
+    @Override
+    public DataInputStream preLoop(InputStream inputStream) throws IOException {
+        Arrays.fill(prototypes, null);
+        nextId = CompactDataPacketStreamWriter.DEFINITION + 1;
+        for (String className : registeredClassNames) {
+            try {
+                define(className);
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+        }
+        if (buffered) {
+            return new PacketInputStream(new BufferedInputStream(inputStream));
+        } else {
+            return new PacketInputStream(inputStream);
+        }
+    }
+
+    /**
+     * Returned by {@link #decode(int, DataInputStream)} for a packet which was
+     * read, but should not be passed on.
+     */
+    static final Object                   SKIPPED         = new Object();
+
+    @Override
+    public Object readOne(DataInputStream stream) throws IOException, ClassNotFoundException {
+        int definedIds = nextId;
+        try {
+            Object obj;
+            do {
+                obj = decode(readId(stream), stream);
+            } while (obj == SKIPPED);
+            return obj;
+        } catch (IOException e) {
+            /*
+             * Forget any definition made by this call, so that it can be retried
+             * from the start of the packet (see SelectorStreamReaderManager).
+             */
+            nextId = definedIds;
+            throw e;
+        }
+    }
+
+    /**
+     * Read the type id at the front of a packet, handling any inline
+     * definition.
+     */
+    int readId(DataInputStream stream) throws IOException, ClassNotFoundException {
+        int id = Varints.readVarInt(stream);
+        if (id == CompactDataPacketStreamWriter.DEFINITION) {
+            define(stream.readUTF());
+            return nextId - 1;
+        } else if (id > CompactDataPacketStreamWriter.DEFINITION && id < nextId) {
+            return id;
+        } else {
+            throw new IOException("Received an undefined type id: " + id);
+        }
+    }
+
+    /**
+     * @return The prototype for a type id returned by
+     *         {@link #readId(DataInputStream)}.
+     */
+    DataPacket prototype(int id) {
+        return prototypes[id];
+    }
+
+    /**
+     * Read the body of a packet whose type id has already been read.
+     * Subclasses may return {@link #SKIPPED} to have the next packet read
+     * instead.
+     */
+    Object decode(int id, DataInputStream stream) throws IOException {
+        return prototypes[id].read(stream);
+    }
+
+    private DataPacket define(String className) throws ClassNotFoundException {
+        DataPacket dataPacket = dataPacketMap.get(className);
+        if (dataPacket == null) {
+            throw new ClassNotFoundException("Could not find a class with the name: " + className);
+        }
+        if (nextId == prototypes.length) {
+            prototypes = Arrays.copyOf(prototypes, 2 * prototypes.length);
+        }
+        prototypes[nextId++] = dataPacket;
+        return dataPacket;
+    }
+}
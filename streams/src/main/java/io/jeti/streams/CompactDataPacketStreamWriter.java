@@ -0,0 +1,91 @@
+package io.jeti.streams;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link StreamWriter} for {@link DataPacket}s which, unlike the
+ * {@link DataPacketStreamWriter}, does not write the full class name in front
+ * of every packet. Instead, every class is assigned a small integer id, and
+ * only that id is written (as a varint) in front of each packet. The first
+ * time a class is written, its definition is sent inline as the reserved id
+ * {@code 0} followed by the class name, after which the reader assigns it the
+ * next free id. Classes can also be registered up front via
+ * {@link #CompactDataPacketStreamWriter(List)}, in which case the reader must
+ * be given the same list in the same order, and no definitions are sent for
+ * them at all.
+ * <p>
+ * Use a {@link CompactDataPacketStreamReader} to read the resulting stream.
+ * </p>
+ */
+public class CompactDataPacketStreamWriter implements StreamWriter<DataOutputStream, DataPacket> {
+
+    static final int                 DEFINITION = 0;
+
+    private final List<String>       registeredClassNames;
+    private final Map<Class, Integer> ids = new HashMap<>();
+    private int                      nextId;
+
+    public CompactDataPacketStreamWriter() {
+        this(Collections.<String>emptyList());
+    }
+
+    /**
+     * @param registeredClassNames: The names of the classes which the reader
+     *            already knows about, in the order in which ids should be
+     *            assigned to them.
+     */
+    public CompactDataPacketStreamWriter(List<String> registeredClassNames) {
+        if (registeredClassNames == null) {
+            throw new NullPointerException("The registered class names cannot be null");
+        }
+        this.registeredClassNames = registeredClassNames;
+    }
+
+    @Override
+    public DataOutputStream preLoop(OutputStream outputStream) throws IOException {
+        ids.clear();
+        nextId = DEFINITION + 1;
+        for (String className : registeredClassNames) {
+            try {
+                ids.put(Class.forName(className), nextId++);
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Could not find a class with the name: " + className, e);
+            }
+        }
+        return new PacketOutputStream(outputStream);
+    }
+
+    @Override
+    public void writeOne(DataOutputStream stream, DataPacket objectToWrite) throws IOException {
+        writeId(stream, objectToWrite.getClass());
+        objectToWrite.write(stream);
+    }
+
+    /**
+     * Write the type id at the front of a packet, defining it first if
+     * needed, and return it.
+     */
+    int writeId(DataOutputStream stream, Class type) throws IOException {
+        Integer id = ids.get(type);
+        if (id == null) {
+            id = nextId++;
+            ids.put(type, id);
+            Varints.writeVarInt(stream, DEFINITION);
+            stream.writeUTF(type.getName());
+        } else {
+            Varints.writeVarInt(stream, id);
+        }
+        return id;
+    }
+
+    @Override
+    public void flush(DataOutputStream stream) throws IOException {
+        stream.flush();
+    }
+}
@@ -0,0 +1,373 @@
+package io.jeti.streams;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * <p>
+ * A {@link StreamDecorator} which compresses the bytes written to a stream.
+ * The written bytes are collected into blocks, and a block is compressed and
+ * written out whenever it fills up, or the stream is flushed. Since the
+ * {@link StreamWriterManager} flushes after every batch, a whole batch is
+ * typically compressed at once. Each block is written as:
+ * </p>
+ * <pre>
+ * byte codec (0 = stored, 1 = deflate, 2 = lz), varint raw length,
+ * and unless stored: varint compressed length, then the block itself
+ * </pre>
+ * <p>
+ * With {@link Codec#DEFLATE}, all of the blocks of a stream continue the same
+ * deflate stream with a sync flush in between, so later blocks can refer back
+ * to earlier ones. {@link Codec#LZ} compresses every block on its own with the
+ * much faster, but weaker, {@link LzCodec}.
+ * </p>
+ * <p>
+ * Compression only pays off when the data actually compresses. Whenever a
+ * block comes out larger than {@code maxRatio} times its raw size, the
+ * following blocks are stored as they are, and compression is only tried
+ * again after a back-off which doubles (up to {@value #MAX_BACKOFF} blocks)
+ * every time it fails again. Blocks smaller than {@value #MIN_BLOCK} bytes are
+ * always stored.
+ * </p>
+ * <p>
+ * The reading side buffers whole blocks, so it cannot be used with the
+ * {@link SelectorStreamReaderManager}.
+ * </p>
+ */
+public class Compression implements StreamDecorator {
+
+    public enum Codec {
+        /**
+         * The JDK {@link Deflater}, at its default level.
+         */
+        DEFLATE,
+        /**
+         * The pure Java {@link LzCodec}.
+         */
+        LZ
+    }
+
+    private static final int    STORED           = 0;
+    private static final int    DEFLATED         = 1;
+    private static final int    LZ_COMPRESSED    = 2;
+    private static final int    MAX_HEADER       = 11;
+    static final int            MIN_BLOCK        = 64;
+    static final int            MAX_BACKOFF      = 64;
+    private static final int    blockSizeDefault = 1 << 16;
+    private static final double maxRatioDefault  = 0.9;
+
+    private final Codec         codec;
+    private final int           blockSize;
+    private final double        maxRatio;
+    private final LongAdder     rawBytes         = new LongAdder();
+    private final LongAdder     writtenBytes     = new LongAdder();
+    private final LongAdder     storedBlocks     = new LongAdder();
+
+    public Compression(Codec codec) {
+        this(codec, blockSizeDefault, maxRatioDefault);
+    }
+
+    /**
+     * @param blockSize: The maximum number of raw bytes compressed at once.
+     * @param maxRatio: The compressed size, as a fraction of the raw size,
+     *            above which compression is turned off for a while.
+     */
+    public Compression(Codec codec, int blockSize, double maxRatio) {
+        if (codec == null) {
+            throw new NullPointerException("The codec cannot be null");
+        }
+        if (blockSize < MIN_BLOCK) {
+            throw new IllegalArgumentException("The block size must be at least " + MIN_BLOCK);
+        }
+        this.codec = codec;
+        this.blockSize = blockSize;
+        this.maxRatio = maxRatio;
+    }
+
+    public static Compression deflate() {
+        return new Compression(Codec.DEFLATE);
+    }
+
+    public static Compression lz() {
+        return new Compression(Codec.LZ);
+    }
+
+    @Override
+    public OutputStream decorate(OutputStream outputStream) {
+        return new CompressingOutputStream(outputStream);
+    }
+
+    @Override
+    public InputStream decorate(InputStream inputStream) {
+        return new DecompressingInputStream(inputStream);
+    }
+
+    /**
+     * @return The number of bytes written to all of the decorated streams,
+     *         before compression.
+     */
+    public long rawBytes() {
+        return rawBytes.sum();
+    }
+
+    /**
+     * @return The number of bytes written to all of the underlying streams,
+     *         after compression, including the block headers.
+     */
+    public long writtenBytes() {
+        return writtenBytes.sum();
+    }
+
+    /**
+     * @return The number of blocks which were written without compression.
+     */
+    public long storedBlocks() {
+        return storedBlocks.sum();
+    }
+
+    private class CompressingOutputStream extends FilterOutputStream {
+
+        private final byte[]   raw     = new byte[blockSize];
+        private final byte[]   header  = new byte[MAX_HEADER];
+        private byte[]         block   = new byte[MAX_HEADER + blockSize];
+        private int            count;
+        private final Deflater deflater;
+        private final LzCodec  lz;
+        private int            skipBlocks;
+        private int            backoff = 1;
+
+        private CompressingOutputStream(OutputStream out) {
+            super(out);
+            deflater = codec == Codec.DEFLATE ? new Deflater(Deflater.DEFAULT_COMPRESSION, true)
+                    : null;
+            lz = codec == Codec.LZ ? new LzCodec() : null;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == raw.length) {
+                writeBlock();
+            }
+            raw[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == raw.length) {
+                    writeBlock();
+                }
+                int n = Math.min(len, raw.length - count);
+                System.arraycopy(b, off, raw, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (count > 0) {
+                writeBlock();
+            }
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                if (deflater != null) {
+                    deflater.end();
+                }
+                out.close();
+            }
+        }
+
+        private void writeBlock() throws IOException {
+            int length = count;
+            count = 0;
+            int kind = STORED;
+            int compressed = -1;
+            if (length < MIN_BLOCK) {
+                /* Too small to be worth it. */
+            } else if (skipBlocks > 0) {
+                skipBlocks--;
+            } else {
+                if (deflater != null) {
+                    kind = DEFLATED;
+                    compressed = deflate(length);
+                } else {
+                    kind = LZ_COMPRESSED;
+                    compressed = lz.compress(raw, length, block, MAX_HEADER, MAX_HEADER + length);
+                }
+                if (compressed < 0 || compressed > maxRatio * length) {
+                    skipBlocks = backoff;
+                    backoff = Math.min(2 * backoff, MAX_BACKOFF);
+                } else {
+                    backoff = 1;
+                }
+            }
+
+            /*
+             * A deflated block has to be sent even if it did not get smaller,
+             * since the deflater remembers its contents.
+             */
+            if (compressed < 0 || (compressed >= length && kind != DEFLATED)) {
+                kind = STORED;
+                compressed = length;
+                System.arraycopy(raw, 0, block, MAX_HEADER, length);
+                storedBlocks.increment();
+            }
+            int headerLength = LzCodec.putVarInt(header, 1, length);
+            if (kind != STORED) {
+                headerLength = LzCodec.putVarInt(header, headerLength, compressed);
+            }
+            header[0] = (byte) kind;
+            int start = MAX_HEADER - headerLength;
+            System.arraycopy(header, 0, block, start, headerLength);
+            out.write(block, start, headerLength + compressed);
+            rawBytes.add(length);
+            writtenBytes.add(headerLength + compressed);
+        }
+
+        private int deflate(int length) {
+            deflater.setInput(raw, 0, length);
+            int position = MAX_HEADER;
+            while (true) {
+                position += deflater.deflate(block, position, block.length - position,
+                        Deflater.SYNC_FLUSH);
+                if (position < block.length) {
+                    return position - MAX_HEADER;
+                }
+                block = Arrays.copyOf(block, 2 * block.length);
+            }
+        }
+    }
+
+    private class DecompressingInputStream extends InputStream {
+
+        private final InputStream     in;
+        private final DataInputStream data;
+        private final byte[]          raw    = new byte[blockSize];
+        private final byte[]          excess = new byte[1];
+        private byte[]                compressed;
+        private Inflater              inflater;
+        private int                   position;
+        private int                   limit;
+
+        private DecompressingInputStream(InputStream in) {
+            this.in = in;
+            this.data = new DataInputStream(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position == limit && !nextBlock()) {
+                return -1;
+            }
+            return raw[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position == limit && !nextBlock()) {
+                return -1;
+            }
+            int n = Math.min(len, limit - position);
+            System.arraycopy(raw, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return limit - position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (inflater != null) {
+                inflater.end();
+            }
+            in.close();
+        }
+
+        /**
+         * Read the next non-empty block, or return false at the end of the
+         * stream.
+         */
+        private boolean nextBlock() throws IOException {
+            do {
+                int kind = data.read();
+                if (kind < 0) {
+                    return false;
+                }
+                int length = Varints.readVarInt(data);
+                if (length < 0 || length > raw.length) {
+                    throw new IOException("Received a block of " + length
+                            + " bytes, but the block size is " + raw.length);
+                }
+                if (kind == STORED) {
+                    data.readFully(raw, 0, length);
+                } else if (kind == DEFLATED || kind == LZ_COMPRESSED) {
+                    int compressedLength = Varints.readVarInt(data);
+                    if (compressedLength < 0 || compressedLength > 2 * raw.length + MAX_HEADER) {
+                        throw new IOException("Received a corrupt block length: " + compressedLength);
+                    }
+                    if (compressed == null || compressed.length < compressedLength) {
+                        compressed = new byte[Math.max(compressedLength, raw.length)];
+                    }
+                    data.readFully(compressed, 0, compressedLength);
+                    if (kind == DEFLATED) {
+                        inflate(compressedLength, length);
+                    } else {
+                        LzCodec.decompress(compressed, compressedLength, raw, length);
+                    }
+                } else {
+                    throw new IOException("Received an unknown block codec: " + kind);
+                }
+                position = 0;
+                limit = length;
+            } while (limit == 0);
+            return true;
+        }
+
+        private void inflate(int compressedLength, int length) throws IOException {
+            if (inflater == null) {
+                inflater = new Inflater(true);
+            }
+            inflater.setInput(compressed, 0, compressedLength);
+            try {
+                int n = 0;
+                while (n < length) {
+                    int inflated = inflater.inflate(raw, n, length - n);
+                    if (inflated == 0 && (inflater.needsInput() || inflater.finished()
+                            || inflater.needsDictionary())) {
+                        throw new EOFException("Received a truncated deflate block");
+                    }
+                    n += inflated;
+                }
+                /* Let the inflater consume the sync flush marker, if it has not yet. */
+                if (inflater.getRemaining() > 0 && inflater.inflate(excess) != 0) {
+                    throw new IOException("Received a deflate block longer than " + length);
+                }
+            } catch (DataFormatException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+}
@@ -25,9 +25,9 @@ public class DataPacketStreamReader implements StreamReader<DataInputStream, Obj
     public DataInputStream preLoop(InputStream inputStream) throws IOException {
         if (buffered) {
             BufferedInputStream bis = new BufferedInputStream(inputStream);
-            return new DataInputStream(bis);
+            return new PacketInputStream(bis);
         } else {
-            return new DataInputStream(inputStream);
+            return new PacketInputStream(inputStream);
         }
     }
 
@@ -30,9 +30,9 @@ public class DataPacketStreamReaderSink implements StreamReader<DataInputStream,
     @Override
     public DataInputStream preLoop(InputStream inputStream) throws IOException {
         if (buffered) {
-            return new DataInputStream(new BufferedInputStream(inputStream));
+            return new PacketInputStream(new BufferedInputStream(inputStream));
         } else {
-            return new DataInputStream(inputStream);
+            return new PacketInputStream(inputStream);
         }
     }
 
@@ -8,7 +8,7 @@ public class DataPacketStreamWriter implements StreamWriter<DataOutputStream, Da
 
     @Override
     public DataOutputStream preLoop(OutputStream outputStream) throws IOException {
-        return new DataOutputStream(outputStream);
+        return new PacketOutputStream(outputStream);
     }
 
     @Override
@@ -16,5 +16,9 @@ public class DataPacketStreamWriter implements StreamWriter<DataOutputStream, Da
         stream.writeUTF(objectToWrite.getClass().getName());
         objectToWrite.write(stream);
     }
-}
 
+    @Override
+    public void flush(DataOutputStream stream) throws IOException {
+        stream.flush();
+    }
+}
@@ -0,0 +1,137 @@
+package io.jeti.streams;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the streams written by a {@link DeltaDataPacketStreamWriter}. The
+ * last encoding of each type is kept, and every delta is applied to it before
+ * the packet is decoded with {@link DataPacket#read(DataInputStream)}. A delta
+ * for a type without a matching previous encoding is skipped until the next
+ * keyframe of that type arrives.
+ */
+public class DeltaDataPacketStreamReader extends CompactDataPacketStreamReader {
+
+    /**
+     * A {@link ByteArrayInputStream} which can be pointed at new contents.
+     */
+    private static class EncodedInputStream extends ByteArrayInputStream {
+
+        private EncodedInputStream() {
+            super(new byte[0]);
+        }
+
+        private void reset(byte[] bytes) {
+            buf = bytes;
+            pos = 0;
+            count = bytes.length;
+            mark = 0;
+        }
+    }
+
+    private final EncodedInputStream encoded       = new EncodedInputStream();
+    private final DataInputStream    encodedStream = new PacketInputStream(encoded);
+    private final List<byte[]>       previous      = new ArrayList<>();
+    private byte[]                   scratch       = new byte[64];
+    private int[]                    runs          = new int[16];
+    private long                     skipped;
+
+    public DeltaDataPacketStreamReader(Map<String, DataPacket> dataPacketMap) {
+        this(dataPacketMap, Collections.<String>emptyList(), true);
+    }
+
+    public DeltaDataPacketStreamReader(Map<String, DataPacket> dataPacketMap,
+            List<String> registeredClassNames, boolean buffered) {
+        super(dataPacketMap, registeredClassNames, buffered);
+    }
+
+    @Override
+    public DataInputStream preLoop(InputStream inputStream) throws IOException {
+        previous.clear();
+        return super.preLoop(inputStream);
+    }
+
+    @Override
+    Object decode(int id, DataInputStream stream) throws IOException {
+        while (previous.size() <= id) {
+            previous.add(null);
+        }
+        int kind = stream.readUnsignedByte();
+        int length = Varints.readVarInt(stream);
+        byte[] last = previous.get(id);
+        if (kind != DeltaDataPacketStreamWriter.KEYFRAME
+                && kind != DeltaDataPacketStreamWriter.DELTA) {
+            throw new IOException("Received an unknown packet kind: " + kind);
+        }
+        if (length < 0) {
+            throw new IOException("Received a negative packet length: " + length);
+        }
+        /*
+         * Read the whole packet before applying it, so that running out of bytes
+         * halfway through leaves the previous encoding untouched. The changed
+         * bytes land at their own positions in the scratch buffer, and the
+         * runs are remembered as pairs of start and end positions.
+         */
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, 2 * scratch.length)];
+        }
+        if (kind == DeltaDataPacketStreamWriter.KEYFRAME) {
+            stream.readFully(scratch, 0, length);
+            if (last == null || last.length != length) {
+                last = new byte[length];
+                previous.set(id, last);
+            }
+            System.arraycopy(scratch, 0, last, 0, length);
+            return decode(id, last);
+        }
+
+        int runCount = 0;
+        int position = 0;
+        while (position < length) {
+            int unchanged = Varints.readVarInt(stream);
+            int changed = Varints.readVarInt(stream);
+            if (unchanged < 0 || changed < 0 || unchanged + changed > length - position
+                    || unchanged + changed == 0) {
+                throw new IOException("Received a malformed delta");
+            }
+            position += unchanged;
+            stream.readFully(scratch, position, changed);
+            if (runs.length < runCount + 2) {
+                runs = Arrays.copyOf(runs, 2 * runs.length);
+            }
+            runs[runCount++] = position;
+            runs[runCount++] = position += changed;
+        }
+
+        if (last == null || last.length != length) {
+            skipped++;
+            return SKIPPED;
+        }
+        for (int run = 0; run < runCount; run += 2) {
+            for (int i = runs[run]; i < runs[run + 1]; i++) {
+                last[i] ^= scratch[i];
+            }
+        }
+        return decode(id, last);
+    }
+
+    private Object decode(int id, byte[] bytes) throws IOException {
+        encoded.reset(bytes);
+        return prototype(id).read(encodedStream);
+    }
+
+    /**
+     * @return The number of deltas which were skipped because the previous
+     *         packet of their type was missing.
+     */
+    public long skipped() {
+        return skipped;
+    }
+}
@@ -0,0 +1,130 @@
+package io.jeti.streams;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>
+ * A {@link CompactDataPacketStreamWriter} which, instead of writing every
+ * packet in full, remembers the last encoded packet of each type, and only
+ * writes how the new encoding differs from it. This pays off for telemetry,
+ * where the same type is sent over and over and most of its fields barely
+ * change. The type itself is already reduced to a small id by the compact
+ * format.
+ * </p>
+ * <p>
+ * Every packet is encoded with {@link DataPacket#write(DataOutputStream)} as
+ * usual, and then written as one of the following:
+ * </p>
+ * <pre>
+ * KEYFRAME: byte 0, varint length, the encoded bytes
+ * DELTA:    byte 1, varint length, then runs until the length is covered:
+ *           varint unchanged byte count, varint changed byte count,
+ *           the changed bytes XORed with the previous encoding
+ * </pre>
+ * A keyframe is written for the first packet of each type, whenever the
+ * length of the encoding changes, and after every {@code keyframeInterval}
+ * deltas, so that a reader which lost track of a type can resynchronize.
+ * Use a {@link DeltaDataPacketStreamReader} to read the resulting stream.
+ */
+public class DeltaDataPacketStreamWriter extends CompactDataPacketStreamWriter {
+
+    static final int                     KEYFRAME                = 0;
+    static final int                     DELTA                   = 1;
+    private static final int             keyframeIntervalDefault = 100;
+
+    /**
+     * A {@link ByteArrayOutputStream} whose internal buffer can be read
+     * without copying it.
+     */
+    private static class EncodingOutputStream extends ByteArrayOutputStream {
+
+        private byte[] buffer() {
+            return buf;
+        }
+    }
+
+    private final int                    keyframeInterval;
+    private final EncodingOutputStream   encoded                 = new EncodingOutputStream();
+    private final DataOutputStream       encodedStream           = new PacketOutputStream(encoded);
+    private final List<byte[]>           previous                = new ArrayList<>();
+    private final List<int[]>            deltasSinceKeyframe     = new ArrayList<>();
+
+    public DeltaDataPacketStreamWriter() {
+        this(Collections.<String>emptyList(), keyframeIntervalDefault);
+    }
+
+    /**
+     * @param keyframeInterval: The maximum number of deltas written for a
+     *            type between two keyframes.
+     */
+    public DeltaDataPacketStreamWriter(List<String> registeredClassNames, int keyframeInterval) {
+        super(registeredClassNames);
+        if (keyframeInterval < 0) {
+            throw new IllegalArgumentException("The keyframe interval cannot be negative");
+        }
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    @Override
+    public DataOutputStream preLoop(OutputStream outputStream) throws IOException {
+        previous.clear();
+        deltasSinceKeyframe.clear();
+        return super.preLoop(outputStream);
+    }
+
+    @Override
+    public void writeOne(DataOutputStream stream, DataPacket objectToWrite) throws IOException {
+        int id = writeId(stream, objectToWrite.getClass());
+        encoded.reset();
+        objectToWrite.write(encodedStream);
+        encodedStream.flush();
+        byte[] bytes = encoded.buffer();
+        int length = encoded.size();
+
+        while (previous.size() <= id) {
+            previous.add(null);
+            deltasSinceKeyframe.add(new int[1]);
+        }
+        byte[] last = previous.get(id);
+        int[] deltas = deltasSinceKeyframe.get(id);
+        if (last == null || last.length != length || deltas[0] >= keyframeInterval) {
+            stream.writeByte(KEYFRAME);
+            Varints.writeVarInt(stream, length);
+            stream.write(bytes, 0, length);
+            if (last == null || last.length != length) {
+                last = new byte[length];
+                previous.set(id, last);
+            }
+            System.arraycopy(bytes, 0, last, 0, length);
+            deltas[0] = 0;
+            return;
+        }
+
+        stream.writeByte(DELTA);
+        Varints.writeVarInt(stream, length);
+        int position = 0;
+        while (position < length) {
+            int start = position;
+            while (position < length && bytes[position] == last[position]) {
+                position++;
+            }
+            int unchanged = position - start;
+            start = position;
+            while (position < length && bytes[position] != last[position]) {
+                last[position] ^= bytes[position];
+                position++;
+            }
+            Varints.writeVarInt(stream, unchanged);
+            Varints.writeVarInt(stream, position - start);
+            stream.write(last, start, position - start);
+            System.arraycopy(bytes, start, last, start, position - start);
+        }
+        deltas[0]++;
+    }
+}
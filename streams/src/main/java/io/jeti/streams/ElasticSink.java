@@ -0,0 +1,352 @@
+package io.jeti.streams;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ * A {@link Sink} which, like a {@link Sinks.MultiThreadedSink}, processes
+ * objects on several {@link Thread}s, but grows and shrinks the number of
+ * workers between a minimum and a maximum to match the load. A worker is added
+ * whenever the queued objects would take longer than the target delay to
+ * process with the current workers, judging by how long the downstream
+ * {@link Sink} has recently taken per object. A worker which has found
+ * nothing to do for the keep-alive time retires, down to the minimum.
+ * </p>
+ * <p>
+ * Instead of sharing one queue, every worker has its own deque, which the
+ * producers fill round-robin. A worker takes objects from the front of its
+ * own deque, and when that is empty, steals from the back of the others, so
+ * no worker sits idle while another falls behind. Since objects can be stolen,
+ * they are processed in parallel and in no particular order.
+ * </p>
+ * <p>
+ * {@link #stop()} lets the workers finish everything that has been queued
+ * before they exit, and {@link #awaitTermination(long, TimeUnit)} waits for
+ * that.
+ * </p>
+ */
+public class ElasticSink<T> implements Sink<T> {
+
+    private static final long                growIntervalNanos = TimeUnit.MILLISECONDS
+            .toNanos(1);
+
+    private final Sink<T>                    sink;
+    private final int                        minThreads;
+    private final int                        maxThreads;
+    private final long                       targetDelayNanos;
+    private final long                       keepAliveNanos;
+    private final Executor                   executor;
+    private final ConcurrentLinkedDeque<T>[] deques;
+    private final boolean[]                  occupied;
+    private volatile int[]                   active            = new int[0];
+    private final AtomicInteger              workers           = new AtomicInteger();
+    private final AtomicInteger              pending           = new AtomicInteger();
+    private final AtomicInteger              idle              = new AtomicInteger();
+    private final AtomicInteger              next              = new AtomicInteger();
+    private final AtomicLong                 lastGrowth        = new AtomicLong();
+    private volatile long                    averageNanos;
+    private volatile boolean                 stopped;
+    private final ReentrantLock              lock              = new ReentrantLock();
+    private final Condition                  notEmpty          = lock.newCondition();
+    private final Condition                  terminated        = lock.newCondition();
+
+    /**
+     * @param targetDelayMillis: How long the queued objects may take to
+     *            process with the current workers before another one is
+     *            added.
+     * @param keepAliveMillis: How long a worker may find nothing to do before
+     *            it retires. Must be positive.
+     */
+    @SuppressWarnings("unchecked")
+    ElasticSink(Sink<T> sink, int minThreads, int maxThreads, long targetDelayMillis,
+            long keepAliveMillis, Executor executor) {
+        if (sink == null) {
+            throw new NullPointerException("The sink cannot be null");
+        }
+        if (executor == null) {
+            throw new NullPointerException("The executor cannot be null");
+        }
+        if (minThreads < 1 || maxThreads < minThreads) {
+            throw new IllegalArgumentException(
+                    "The thread counts must satisfy 1 <= minThreads <= maxThreads");
+        }
+        if (targetDelayMillis < 0) {
+            throw new IllegalArgumentException("The target delay cannot be negative");
+        }
+        if (keepAliveMillis < 1) {
+            throw new IllegalArgumentException("The keep-alive time must be positive");
+        }
+        this.sink = sink;
+        this.minThreads = minThreads;
+        this.maxThreads = maxThreads;
+        this.targetDelayNanos = TimeUnit.MILLISECONDS.toNanos(targetDelayMillis);
+        this.keepAliveNanos = TimeUnit.MILLISECONDS.toNanos(keepAliveMillis);
+        this.executor = executor;
+        this.deques = new ConcurrentLinkedDeque[maxThreads];
+        for (int i = 0; i < maxThreads; i++) {
+            deques[i] = new ConcurrentLinkedDeque<>();
+        }
+        this.occupied = new boolean[maxThreads];
+        for (int i = 0; i < minThreads; i++) {
+            grow();
+        }
+    }
+
+    @Override
+    public void process(T obj) {
+        int[] slots = active;
+        int slot = slots.length == 0 ? 0
+                : slots[(next.getAndIncrement() & Integer.MAX_VALUE) % slots.length];
+        deques[slot].addLast(obj);
+        int queued = pending.incrementAndGet();
+        if (idle.get() > 0) {
+            lock.lock();
+            try {
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+        } else if (behind(queued)) {
+            long now = System.nanoTime();
+            long last = lastGrowth.get();
+            if (now - last >= growIntervalNanos && lastGrowth.compareAndSet(last, now)) {
+                grow();
+            }
+        }
+    }
+
+    /**
+     * @return Whether the queued objects would take longer than the target
+     *         delay to process with the current workers.
+     */
+    private boolean behind(int queued) {
+        int current = workers.get();
+        if (current >= maxThreads || stopped) {
+            return false;
+        }
+        long perObject = Math.max(averageNanos, 1000);
+        return queued * perObject / Math.max(current, 1) > targetDelayNanos;
+    }
+
+    /**
+     * Start another worker, unless there are already {@code maxThreads}. If
+     * the {@link Executor} throws, the worker is given up, and the exception
+     * is rethrown.
+     */
+    private void grow() {
+        int slot;
+        lock.lock();
+        try {
+            if (stopped || workers.get() >= maxThreads) {
+                return;
+            }
+            slot = 0;
+            while (occupied[slot]) {
+                slot++;
+            }
+            occupied[slot] = true;
+            workers.incrementAndGet();
+            publishActive();
+        } finally {
+            lock.unlock();
+        }
+        int worker = slot;
+        try {
+            executor.execute(() -> work(worker));
+        } catch (RuntimeException | Error e) {
+            lock.lock();
+            try {
+                release(worker);
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Free the slot of a worker which has exited, or never started. Called
+     * with the lock held.
+     */
+    private void release(int slot) {
+        occupied[slot] = false;
+        publishActive();
+        if (workers.decrementAndGet() == 0) {
+            terminated.signalAll();
+        }
+        /* Anything queued in this slot from now on is stolen by the others. */
+        notEmpty.signal();
+    }
+
+    /**
+     * Copy the occupied slots into {@link #active}. Called with the lock held.
+     */
+    private void publishActive() {
+        int[] slots = new int[maxThreads];
+        int count = 0;
+        for (int i = 0; i < maxThreads; i++) {
+            if (occupied[i]) {
+                slots[count++] = i;
+            }
+        }
+        active = Arrays.copyOf(slots, count);
+    }
+
+    /**
+     * Process objects until the worker retires, or its {@link Thread} is
+     * interrupted (for example by {@code ExecutorService.shutdownNow()}),
+     * which makes it exit even if it is needed to keep the minimum number of
+     * workers.
+     */
+    private void work(int slot) {
+        while (!Thread.currentThread().isInterrupted()) {
+            T obj = take(slot);
+            if (obj == null) {
+                if (retire(slot)) {
+                    return;
+                }
+                continue;
+            }
+            long start = System.nanoTime();
+            try {
+                sink.process(obj);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            long nanos = System.nanoTime() - start;
+            /* An exponentially weighted moving average; racy updates are fine. */
+            averageNanos += (nanos - averageNanos) >> 3;
+        }
+        lock.lock();
+        try {
+            release(slot);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take an object from this worker's own deque, or steal one from another
+     * worker, waiting up to the keep-alive time for one to arrive. A worker
+     * which is needed to keep the minimum number of workers waits without a
+     * timeout instead, since it would not retire anyway. Return null if none
+     * did, if the sink was stopped and everything is processed, or if the
+     * worker was interrupted.
+     */
+    private T take(int slot) {
+        T obj = poll(slot);
+        if (obj != null) {
+            return obj;
+        }
+        lock.lock();
+        idle.incrementAndGet();
+        try {
+            long nanos = keepAliveNanos;
+            while ((obj = poll(slot)) == null) {
+                if (stopped || nanos <= 0) {
+                    return null;
+                }
+                if (workers.get() <= minThreads) {
+                    notEmpty.await();
+                } else {
+                    nanos = notEmpty.awaitNanos(nanos);
+                }
+            }
+            return obj;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            idle.decrementAndGet();
+            lock.unlock();
+        }
+    }
+
+    private T poll(int slot) {
+        T obj = deques[slot].pollFirst();
+        for (int i = 1; obj == null && i < maxThreads; i++) {
+            obj = deques[(slot + i) % maxThreads].pollLast();
+        }
+        if (obj != null) {
+            pending.decrementAndGet();
+        }
+        return obj;
+    }
+
+    /**
+     * Retire a worker which found nothing to do, unless it is needed to keep
+     * the minimum number of workers. Once stopped, every worker retires.
+     */
+    private boolean retire(int slot) {
+        lock.lock();
+        try {
+            if (!stopped && workers.get() <= minThreads) {
+                return false;
+            }
+            if (stopped && pending.get() > 0) {
+                return false;
+            }
+            release(slot);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop accepting new workers, and let the current ones exit once
+     * everything that was queued has been processed. Objects passed to
+     * {@link #process(Object)} after this may not be processed.
+     */
+    public void stop() {
+        lock.lock();
+        try {
+            stopped = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait for the workers to exit after {@link #stop()}.
+     *
+     * @return Whether they all exited before the timeout.
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (workers.get() > 0) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = terminated.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of objects waiting to be processed.
+     */
+    public int size() {
+        return pending.get();
+    }
+
+    /**
+     * @return The current number of workers.
+     */
+    public int threads() {
+        return workers.get();
+    }
+}
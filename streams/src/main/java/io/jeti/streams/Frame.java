@@ -0,0 +1,76 @@
+package io.jeti.streams;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.util.zip.CRC32;
+
+/**
+ * <p>
+ * A single frame of the framed wire format written by the
+ * {@link FramedDataPacketStreamWriter}. Every frame looks like this:
+ * </p>
+ * <pre>
+ * short  MAGIC
+ * byte   flags            (FLAG_CHECKSUM if a checksum follows the body)
+ * int    length           (of the body)
+ * short  header checksum  (low 16 bits of the CRC32 of flags and length)
+ * byte[] body             (the type name, written with writeUTF, then the payload)
+ * int    checksum         (CRC32 of the body, only if FLAG_CHECKSUM is set)
+ * </pre>
+ * Since the length of the body is known up front, a frame can be read (see
+ * {@link FrameReader}) without decoding it, and a frame whose type is unknown
+ * or whose checksum does not match can simply be skipped. The magic number
+ * lets a reader find the start of the next frame after a corrupt one, and the
+ * header checksum keeps it from trusting a corrupt length.
+ */
+public final class Frame {
+
+    public static final int MAGIC         = 0x4A46;
+    public static final int FLAG_CHECKSUM = 0x01;
+
+    private final String    type;
+    private final byte[]    body;
+    private final int       payloadOffset;
+
+    /**
+     * @return The header checksum of a frame with these flags and length.
+     */
+    static int headerChecksum(CRC32 crc, int flags, int length) {
+        crc.reset();
+        crc.update(flags);
+        crc.update(length >>> 24);
+        crc.update(length >>> 16);
+        crc.update(length >>> 8);
+        crc.update(length);
+        return (int) crc.getValue() & 0xFFFF;
+    }
+
+    Frame(String type, byte[] body, int payloadOffset) {
+        this.type = type;
+        this.body = body;
+        this.payloadOffset = payloadOffset;
+    }
+
+    /**
+     * @return The name of the class which wrote the payload.
+     */
+    public String type() {
+        return type;
+    }
+
+    /**
+     * @return The number of bytes in the payload.
+     */
+    public int payloadLength() {
+        return body.length - payloadOffset;
+    }
+
+    /**
+     * @return A new {@link DataInputStream} over the payload, which can be
+     *         passed to {@link DataPacket#read(DataInputStream)}.
+     */
+    public DataInputStream payload() {
+        return new PacketInputStream(
+                new ByteArrayInputStream(body, payloadOffset, body.length - payloadOffset));
+    }
+}
@@ -0,0 +1,187 @@
+package io.jeti.streams;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+
+/**
+ * Reads {@link Frame}s from a {@link DataInputStream} without decoding their
+ * payloads. Corrupt frames (a bad header checksum, a bad length, or a
+ * checksum mismatch) are skipped, and the {@link FrameReader} scans forward to
+ * the next {@link Frame#MAGIC} to resynchronize, so a single corrupt frame
+ * does not end the stream. The scan resumes right after the magic number of
+ * the corrupt frame, so any intact frames within the bytes that were read for
+ * it are still found.
+ */
+public class FrameReader {
+
+    static final int         maxLengthDefault = 16 * 1024 * 1024;
+    private static final int headerLength     = 7;
+
+    private final int        maxLength;
+    private final CRC32      crc              = new CRC32();
+    private final byte[]     header           = new byte[headerLength];
+    private final byte[]     checksum         = new byte[4];
+    /**
+     * Bytes which were read from the stream for a corrupt frame, and have to
+     * be scanned again before reading any further.
+     */
+    private byte[]           replay           = new byte[0];
+    private int              replayPosition;
+    private long             corruptFrames;
+    private long             skippedBytes;
+
+    public FrameReader() {
+        this(maxLengthDefault);
+    }
+
+    /**
+     * @param maxLength: The largest body length that will be accepted. Longer
+     *            lengths are treated as corrupt.
+     */
+    public FrameReader(int maxLength) {
+        if (maxLength < 1) {
+            throw new IllegalArgumentException("The maximum length must be positive");
+        }
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * @return The largest body length that will be accepted.
+     */
+    public int maxLength() {
+        return maxLength;
+    }
+
+    /**
+     * Read the next intact {@link Frame}, skipping any corrupt ones.
+     */
+    public Frame read(DataInputStream stream) throws IOException {
+        byte[] initialReplay = replay;
+        int initialReplayPosition = replayPosition;
+        try {
+            return readFrame(stream);
+        } catch (IOException e) {
+            /*
+             * Leave the replay as it was, so that an abandoned call can be
+             * retried from the same point (see SelectorStreamReaderManager).
+             */
+            replay = initialReplay;
+            replayPosition = initialReplayPosition;
+            throw e;
+        }
+    }
+
+    private Frame readFrame(DataInputStream stream) throws IOException {
+        while (true) {
+            if (replayPosition == replay.length && replay.length > 0) {
+                replay = new byte[0];
+                replayPosition = 0;
+            }
+            int previous = readUnsignedByte(stream);
+            int current = readUnsignedByte(stream);
+            while (((previous << 8) | current) != Frame.MAGIC) {
+                previous = current;
+                current = readUnsignedByte(stream);
+                skippedBytes++;
+            }
+            readFully(stream, header, 0, headerLength);
+            int flags = header[0] & 0xFF;
+            int length = ((header[1] & 0xFF) << 24) | ((header[2] & 0xFF) << 16)
+                    | ((header[3] & 0xFF) << 8) | (header[4] & 0xFF);
+            int headerChecksum = ((header[5] & 0xFF) << 8) | (header[6] & 0xFF);
+            if (headerChecksum != Frame.headerChecksum(crc, flags, length) || length < 2
+                    || length > maxLength) {
+                corrupt(null, 0);
+                continue;
+            }
+            byte[] body = new byte[length];
+            readFully(stream, body, 0, length);
+            if ((flags & Frame.FLAG_CHECKSUM) != 0) {
+                readFully(stream, checksum, 0, 4);
+                crc.reset();
+                crc.update(body, 0, length);
+                int expected = (int) crc.getValue();
+                int actual = ((checksum[0] & 0xFF) << 24) | ((checksum[1] & 0xFF) << 16)
+                        | ((checksum[2] & 0xFF) << 8) | (checksum[3] & 0xFF);
+                if (actual != expected) {
+                    corrupt(body, 4);
+                    continue;
+                }
+            }
+            int typeLength = ((body[0] & 0xFF) << 8) | (body[1] & 0xFF);
+            if (2 + typeLength > length) {
+                corruptFrames++;
+                continue;
+            }
+            String type;
+            try {
+                type = new DataInputStream(new ByteArrayInputStream(body)).readUTF();
+            } catch (IOException e) {
+                corruptFrames++;
+                continue;
+            }
+            return new Frame(type, body, 2 + typeLength);
+        }
+    }
+
+    /**
+     * Count a corrupt frame, and have everything read for it after the first
+     * byte of its magic number scanned again.
+     *
+     * @param body: The body of the frame, if it was read.
+     * @param checksumLength: The number of bytes of {@link #checksum} which
+     *            were read after the body.
+     */
+    private void corrupt(byte[] body, int checksumLength) {
+        corruptFrames++;
+        int bodyLength = body == null ? 0 : body.length;
+        int remaining = replay.length - replayPosition;
+        byte[] bytes = new byte[1 + headerLength + bodyLength + checksumLength + remaining];
+        int position = 0;
+        bytes[position++] = (byte) Frame.MAGIC;
+        System.arraycopy(header, 0, bytes, position, headerLength);
+        position += headerLength;
+        if (body != null) {
+            System.arraycopy(body, 0, bytes, position, bodyLength);
+            position += bodyLength;
+        }
+        System.arraycopy(checksum, 0, bytes, position, checksumLength);
+        position += checksumLength;
+        System.arraycopy(replay, replayPosition, bytes, position, remaining);
+        replay = bytes;
+        replayPosition = 0;
+    }
+
+    private int readUnsignedByte(DataInputStream stream) throws IOException {
+        if (replayPosition < replay.length) {
+            return replay[replayPosition++] & 0xFF;
+        }
+        return stream.readUnsignedByte();
+    }
+
+    private void readFully(DataInputStream stream, byte[] b, int off, int len)
+            throws IOException {
+        int n = Math.min(len, replay.length - replayPosition);
+        System.arraycopy(replay, replayPosition, b, off, n);
+        replayPosition += n;
+        stream.readFully(b, off + n, len - n);
+    }
+
+    /**
+     * @return The number of frames which were skipped because they were
+     *         corrupt.
+     */
+    public long corruptFrames() {
+        return corruptFrames;
+    }
+
+    /**
+     * @return The number of bytes which were skipped while looking for the
+     *         start of a frame.
+     */
+    public long skippedBytes() {
+        return skippedBytes;
+    }
+}
@@ -0,0 +1,98 @@
+package io.jeti.streams;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * Reads the streams written by a {@link FramedDataPacketStreamWriter}. Unlike
+ * the {@link DataPacketStreamReader}, a packet whose class is missing from the
+ * {@code dataPacketMap}, or a frame which is corrupt, does not end the stream.
+ * Such frames are skipped (and counted), and reading continues with the next
+ * frame.
+ */
+public class FramedDataPacketStreamReader implements StreamReader<DataInputStream, Object> {
+
+    private final Map<String, DataPacket> dataPacketMap;
+    private final FrameReader             frameReader;
+    private final boolean                 buffered;
+    private static final boolean          bufferedDefault = true;
+    private long                          unknownFrames;
+    private long                          undecodableFrames;
+
+    public FramedDataPacketStreamReader(Map<String, DataPacket> dataPacketMap) {
+        this(dataPacketMap, new FrameReader(), bufferedDefault);
+    }
+
+    public FramedDataPacketStreamReader(Map<String, DataPacket> dataPacketMap,
+            FrameReader frameReader, boolean buffered) {
+        if (dataPacketMap == null) {
+            throw new NullPointerException("The dataPacketMap cannot be null");
+        }
+        if (frameReader == null) {
+            throw new NullPointerException("The frameReader cannot be null");
+        }
+        this.dataPacketMap = dataPacketMap;
+        this.frameReader = frameReader;
+        this.buffered = buffered;
+    }
+
+    @Override
+    public DataInputStream preLoop(InputStream inputStream) throws IOException {
+        if (buffered) {
+            return new DataInputStream(new BufferedInputStream(inputStream));
+        } else {
+            return new DataInputStream(inputStream);
+        }
+    }
+
+    @Override
+    public Object readOne(DataInputStream stream) throws IOException {
+        while (true) {
+            Frame frame = frameReader.read(stream);
+            DataPacket dataPacket = dataPacketMap.get(frame.type());
+            if (dataPacket == null) {
+                unknownFrames++;
+                continue;
+            }
+            try {
+                return dataPacket.read(frame.payload());
+            } catch (IOException e) {
+                undecodableFrames++;
+            }
+        }
+    }
+
+    /**
+     * @return Whether the stream is read through a {@link BufferedInputStream}.
+     */
+    boolean buffered() {
+        return buffered;
+    }
+
+    /**
+     * @return The {@link FrameReader} used to split the stream into frames,
+     *         which also counts the corrupt frames.
+     */
+    public FrameReader frameReader() {
+        return frameReader;
+    }
+
+    /**
+     * @return The number of frames which were skipped because their type was
+     *         not in the {@code dataPacketMap}.
+     */
+    public long unknownFrames() {
+        return unknownFrames;
+    }
+
+    /**
+     * @return The number of frames which were skipped because their payload
+     *         could not be decoded.
+     */
+    public long undecodableFrames() {
+        return undecodableFrames;
+    }
+}
@@ -0,0 +1,72 @@
+package io.jeti.streams;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+
+/**
+ * A {@link StreamWriter} for {@link DataPacket}s which writes every packet as
+ * a length-prefixed {@link Frame}, optionally followed by a CRC32 checksum.
+ * Use a {@link FramedDataPacketStreamReader} to read the resulting stream.
+ */
+public class FramedDataPacketStreamWriter implements StreamWriter<DataOutputStream, DataPacket> {
+
+    /**
+     * A {@link ByteArrayOutputStream} whose internal buffer can be written out
+     * without copying it.
+     */
+    private static class BodyOutputStream extends ByteArrayOutputStream {
+
+        private void writeTo(DataOutputStream stream, int flags, CRC32 headerCrc, CRC32 crc)
+                throws IOException {
+            stream.writeByte(flags);
+            stream.writeInt(count);
+            stream.writeShort(Frame.headerChecksum(headerCrc, flags, count));
+            stream.write(buf, 0, count);
+            if (crc != null) {
+                crc.reset();
+                crc.update(buf, 0, count);
+                stream.writeInt((int) crc.getValue());
+            }
+        }
+    }
+
+    private static final boolean   checksumsDefault = true;
+
+    private final BodyOutputStream body             = new BodyOutputStream();
+    private final DataOutputStream bodyStream       = new PacketOutputStream(body);
+    private final CRC32            headerCrc        = new CRC32();
+    private final CRC32            crc;
+
+    public FramedDataPacketStreamWriter() {
+        this(checksumsDefault);
+    }
+
+    /**
+     * @param checksums: Whether to append a CRC32 checksum to every frame.
+     */
+    public FramedDataPacketStreamWriter(boolean checksums) {
+        this.crc = checksums ? new CRC32() : null;
+    }
+
+    @Override
+    public DataOutputStream preLoop(OutputStream outputStream) throws IOException {
+        return new DataOutputStream(outputStream);
+    }
+
+    @Override
+    public void writeOne(DataOutputStream stream, DataPacket objectToWrite) throws IOException {
+        body.reset();
+        bodyStream.writeUTF(objectToWrite.getClass().getName());
+        objectToWrite.write(bodyStream);
+        stream.writeShort(Frame.MAGIC);
+        body.writeTo(stream, crc != null ? Frame.FLAG_CHECKSUM : 0, headerCrc, crc);
+    }
+
+    @Override
+    public void flush(DataOutputStream stream) throws IOException {
+        stream.flush();
+    }
+}
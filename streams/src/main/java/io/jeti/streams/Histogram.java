@@ -0,0 +1,100 @@
+package io.jeti.streams;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of non-negative values (typically latencies in
+ * nanoseconds). Values are counted in buckets by their power of two, using
+ * striped {@link LongAdder}s, so recording a value from many {@link Thread}s
+ * at once is cheap. Percentiles are therefore only accurate to within a factor
+ * of two, which is plenty for spotting where the time goes.
+ */
+public class Histogram {
+
+    private static final int      buckets = 64;
+
+    private final LongAdder[]     counts  = new LongAdder[buckets];
+    private final LongAdder       sum     = new LongAdder();
+    private final LongAccumulator max     = new LongAccumulator(Math::max, 0);
+
+    public Histogram() {
+        for (int i = 0; i < buckets; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[Long.SIZE - Long.numberOfLeadingZeros(value)].increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public Snapshot snapshot() {
+        long[] snapshot = new long[buckets];
+        for (int i = 0; i < buckets; i++) {
+            snapshot[i] = counts[i].sum();
+        }
+        return new Snapshot(snapshot, sum.sum(), max.get());
+    }
+
+    /**
+     * A point-in-time copy of a {@link Histogram}.
+     */
+    public static class Snapshot {
+
+        private final long[] counts;
+        private final long   count;
+        private final long   sum;
+        private final long   max;
+
+        private Snapshot(long[] counts, long sum, long max) {
+            long count = 0;
+            for (long c : counts) {
+                count += c;
+            }
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public long max() {
+            return max;
+        }
+
+        public double mean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * @param quantile: A number between 0 and 1, such as 0.99.
+         * @return An upper bound on the value below which the specified
+         *         fraction of the recorded values fall.
+         */
+        public long percentile(double quantile) {
+            long rank = (long) Math.ceil(quantile * count);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(max, (1L << i) - 1);
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + ", mean=" + (long) mean() + ", p50=" + percentile(0.5)
+                    + ", p99=" + percentile(0.99) + ", max=" + max;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package io.jeti.streams;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * An append-only journal of records, stored in a directory as a sequence of
+ * fixed-size, memory-mapped segment files. Records are numbered with a
+ * sequence number starting at 0, and every segment file is named after the
+ * sequence number of its first record, which serves as the index for finding
+ * a record (see {@link JournalReader}). Each record looks like this:
+ * </p>
+ * <pre>
+ * int    length           (of the body, written last)
+ * long   timestamp        (milliseconds since the epoch)
+ * byte   kind             (DATA_PACKET or SERIALIZABLE)
+ * byte[] body
+ * </pre>
+ * A length of 0 means that nothing has been written there yet, and a length
+ * of {@link #ROLL} means that the journal continues in the next segment. Since
+ * the length is written after the rest of the record, with a memory fence in
+ * between (see {@link #fence()}), a {@link JournalReader} can tail the journal
+ * while it is being written, from another {@link Thread} or process.
+ * <p>
+ * A {@link Journal} must only be appended to from one {@link Thread} at a
+ * time. Usually, it is written by a {@link JournalStreamWriter}.
+ * </p>
+ */
+public class Journal implements Closeable {
+
+    static final int         HEADER       = 4 + 8 + 1;
+    static final int         ROLL         = -1;
+    static final byte        DATA_PACKET  = 0;
+    static final byte        SERIALIZABLE = 1;
+    static final String      EXTENSION    = ".journal";
+
+    /**
+     * Written and read by {@link #fence()}.
+     */
+    private static volatile int fence;
+
+    private final File       directory;
+    private final int        segmentSize;
+    private MappedByteBuffer segment;
+    private int              position;
+    private long             sequence;
+
+    private Journal(File directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Open the journal in the specified directory, creating it if necessary.
+     * If the journal already contains records, new records are appended after
+     * them.
+     *
+     * @param segmentSize: The size of each segment file, in bytes. This is
+     *            also the upper limit on the size of a record.
+     */
+    public static Journal open(File directory, int segmentSize) throws IOException {
+        if (segmentSize < HEADER + 4) {
+            throw new IllegalArgumentException("The segment size is too small");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create the directory: " + directory);
+        }
+        Journal journal = new Journal(directory, segmentSize);
+        long[] bases = segments(directory);
+        if (bases.length == 0) {
+            journal.map(0);
+        } else {
+            journal.map(bases[bases.length - 1]);
+            int length;
+            while ((length = journal.segment.getInt(journal.position)) > 0) {
+                journal.position += HEADER + length;
+                journal.sequence++;
+            }
+        }
+        return journal;
+    }
+
+    /**
+     * @return The sequence numbers of the first records of the segments in
+     *         the directory, in increasing order.
+     */
+    static long[] segments(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+        if (files == null) {
+            return new long[0];
+        }
+        long[] bases = new long[files.length];
+        for (int i = 0; i < files.length; i++) {
+            String name = files[i].getName();
+            bases[i] = Long.parseLong(name.substring(0, name.length() - EXTENSION.length()));
+        }
+        Arrays.sort(bases);
+        return bases;
+    }
+
+    static File segmentFile(File directory, long base) {
+        return new File(directory, String.format("%020d", base) + EXTENSION);
+    }
+
+    private void map(long base) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segmentFile(directory, base), "rw")) {
+            if (file.length() < segmentSize) {
+                file.setLength(segmentSize);
+            }
+            segment = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        position = 0;
+        sequence = base;
+    }
+
+    /**
+     * Append a record, and return its sequence number.
+     */
+    long append(byte kind, byte[] body, int offset, int length) throws IOException {
+        if (length < 1 || HEADER + length + 4 > segmentSize) {
+            throw new IOException("Cannot journal a record of " + length + " bytes");
+        }
+        if (position + HEADER + length + 4 > segmentSize) {
+            MappedByteBuffer full = segment;
+            int rollPosition = position;
+            map(sequence);
+            full.putInt(rollPosition, ROLL);
+        }
+        segment.putLong(position + 4, System.currentTimeMillis());
+        segment.put(position + 12, kind);
+        segment.position(position + HEADER);
+        segment.put(body, offset, length);
+        fence();
+        segment.putInt(position, length);
+        position += HEADER + length;
+        return sequence++;
+    }
+
+    /**
+     * Keep the memory accesses before this call from being reordered with the
+     * ones after it, so that the length of a record is written after, and read
+     * before, the rest of it. The mapped segments are not covered by the Java
+     * memory model, but a volatile write followed by a volatile read compiles
+     * to a full fence for all memory, which Java 8 has no direct way to ask
+     * for.
+     */
+    static void fence() {
+        fence = 1;
+        if (fence != 1) {
+            throw new AssertionError();
+        }
+    }
+
+    /**
+     * @return The sequence number that the next record will get.
+     */
+    public long nextSequence() {
+        return sequence;
+    }
+
+    /**
+     * Force the current segment to be written to the storage device.
+     */
+    public void force() {
+        segment.force();
+    }
+
+    @Override
+    public void close() {
+        force();
+    }
+}
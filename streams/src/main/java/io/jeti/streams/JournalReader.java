@@ -0,0 +1,190 @@
+package io.jeti.streams;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the records of a {@link Journal}, possibly while it is still being
+ * written. A {@link JournalReader} starts at the first record, but it can be
+ * moved with {@link #seekToSequence(long)} or {@link #seekToTimestamp(long)}.
+ * Each call to {@link #next()} moves it to the next record, if one has been
+ * written.
+ */
+public class JournalReader implements Closeable {
+
+    /**
+     * A {@link ByteArrayInputStream} which can be pointed at new contents.
+     */
+    private static class BodyInputStream extends ByteArrayInputStream {
+
+        private BodyInputStream() {
+            super(new byte[0]);
+        }
+
+        private void reset(byte[] bytes, int length) {
+            buf = bytes;
+            pos = 0;
+            count = length;
+            mark = 0;
+        }
+    }
+
+    private final File             directory;
+    private final BodyInputStream  bodyInputStream = new BodyInputStream();
+    private final DataInputStream  body            = new PacketInputStream(bodyInputStream);
+    private byte[]                 bytes           = new byte[256];
+    private MappedByteBuffer       segment;
+    private int                    position;
+    private long                   sequence;
+    private long                   timestamp;
+    private byte                   kind;
+
+    public JournalReader(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Move to the record with the specified sequence number, so that the next
+     * call to {@link #next()} returns it.
+     *
+     * @return False if the journal does not reach that far back.
+     */
+    public boolean seekToSequence(long target) throws IOException {
+        long[] bases = Journal.segments(directory);
+        for (int i = bases.length - 1; i >= 0; i--) {
+            if (bases[i] <= target) {
+                map(bases[i]);
+                while (sequence < target && skip()) {
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Move to the first record which was written at or after the specified
+     * time (in milliseconds since the epoch), so that the next call to
+     * {@link #next()} returns it.
+     */
+    public void seekToTimestamp(long target) throws IOException {
+        long[] bases = Journal.segments(directory);
+        if (bases.length == 0) {
+            return;
+        }
+        for (int i = bases.length - 1; i >= 0; i--) {
+            map(bases[i]);
+            int length = segment.getInt(0);
+            if (i == 0 || (length > 0 && segment.getLong(4) <= target)) {
+                break;
+            }
+        }
+        int length;
+        while ((length = segment.getInt(position)) != 0) {
+            if (length > 0 && segment.getLong(position + 4) >= target) {
+                return;
+            }
+            if (!skip()) {
+                /* The journal rolled into a segment which does not exist. */
+                return;
+            }
+        }
+    }
+
+    /**
+     * Move to the next record.
+     *
+     * @return False if the next record has not been written yet.
+     */
+    public boolean next() throws IOException {
+        if (segment == null) {
+            /* Older segments may have been deleted, so start at the first one left. */
+            long[] bases = Journal.segments(directory);
+            if (bases.length == 0 || !seekToSequence(bases[0])) {
+                return false;
+            }
+        }
+        int length = segment.getInt(position);
+        if (length == Journal.ROLL) {
+            if (!Journal.segmentFile(directory, sequence).exists()) {
+                return false;
+            }
+            map(sequence);
+            length = segment.getInt(position);
+        }
+        if (length <= 0) {
+            return false;
+        }
+        /* Pairs with the fence in Journal#append, so the rest is read after the length. */
+        Journal.fence();
+        timestamp = segment.getLong(position + 4);
+        kind = segment.get(position + 12);
+        if (bytes.length < length) {
+            bytes = new byte[Math.max(length, 2 * bytes.length)];
+        }
+        segment.position(position + Journal.HEADER);
+        segment.get(bytes, 0, length);
+        bodyInputStream.reset(bytes, length);
+        position += Journal.HEADER + length;
+        sequence++;
+        return true;
+    }
+
+    private boolean skip() throws IOException {
+        int length = segment.getInt(position);
+        if (length == Journal.ROLL && Journal.segmentFile(directory, sequence).exists()) {
+            map(sequence);
+            return true;
+        } else if (length > 0) {
+            position += Journal.HEADER + length;
+            sequence++;
+            return true;
+        }
+        return false;
+    }
+
+    private void map(long base) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(Journal.segmentFile(directory, base),
+                "r")) {
+            segment = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        }
+        position = 0;
+        sequence = base;
+    }
+
+    /**
+     * @return The sequence number of the current record.
+     */
+    public long sequence() {
+        return sequence - 1;
+    }
+
+    /**
+     * @return The time at which the current record was written.
+     */
+    public long timestamp() {
+        return timestamp;
+    }
+
+    byte kind() {
+        return kind;
+    }
+
+    /**
+     * @return The body of the current record.
+     */
+    DataInputStream body() {
+        return body;
+    }
+
+    @Override
+    public void close() {
+        segment = null;
+    }
+}
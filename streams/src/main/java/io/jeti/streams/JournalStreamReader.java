@@ -0,0 +1,78 @@
+package io.jeti.streams;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.ObjectInputStream;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A {@link StreamReader} which reads the objects written by a
+ * {@link JournalStreamWriter} back out of a {@link Journal}, starting wherever
+ * the {@link JournalReader} was positioned. When it reaches the end of the
+ * journal, it either waits for more records to be written (when following the
+ * journal), or throws an {@link EOFException} (when replaying it). Like the
+ * {@link JournalStreamWriter}, it is started with a {@code null}
+ * {@link InputStream}, and the {@link JournalReader} is closed when the
+ * {@link StreamReaderManager} stops.
+ */
+public class JournalStreamReader implements StreamReader<JournalReader, Object> {
+
+    private static final long             pollNanos = 100_000;
+
+    private final JournalReader           reader;
+    private final Map<String, DataPacket> dataPacketMap;
+    private final boolean                 follow;
+
+    /**
+     * @param follow: If true, wait for new records at the end of the journal.
+     *            Otherwise, stop there.
+     */
+    public JournalStreamReader(JournalReader reader, Map<String, DataPacket> dataPacketMap,
+            boolean follow) {
+        if (reader == null) {
+            throw new NullPointerException("The reader cannot be null");
+        }
+        if (dataPacketMap == null) {
+            throw new NullPointerException("The dataPacketMap cannot be null");
+        }
+        this.reader = reader;
+        this.dataPacketMap = dataPacketMap;
+        this.follow = follow;
+    }
+
+    @Override
+    public JournalReader preLoop(InputStream inputStream) throws IOException {
+        return reader;
+    }
+
+    @Override
+    public Object readOne(JournalReader reader) throws IOException, ClassNotFoundException {
+        while (!reader.next()) {
+            if (!follow) {
+                throw new EOFException("Reached the end of the journal");
+            }
+            LockSupport.parkNanos(pollNanos);
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException("Stopped following the journal");
+            }
+        }
+        if (reader.kind() == Journal.SERIALIZABLE) {
+            return new ObjectInputStream(reader.body()).readObject();
+        }
+        String className = reader.body().readUTF();
+        DataPacket dataPacket = dataPacketMap.get(className);
+        if (dataPacket != null) {
+            return dataPacket.read(reader.body());
+        } else {
+            throw new ClassNotFoundException("Could not find a class with the name: " + className);
+        }
+    }
+
+    @Override
+    public void closed() {
+        reader.close();
+    }
+}
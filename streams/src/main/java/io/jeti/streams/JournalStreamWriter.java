@@ -0,0 +1,74 @@
+package io.jeti.streams;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+
+/**
+ * <p>
+ * A {@link StreamWriter} which appends every object to a {@link Journal}
+ * instead of writing it to an {@link OutputStream}. {@link DataPacket}s are
+ * written with {@link DataPacket#write(DataOutputStream)}, behind their class
+ * name. Any other {@link Serializable} object is written with its own
+ * {@link ObjectOutputStream}, so that every record can be read on its own.
+ * </p>
+ * <p>
+ * Since there is no {@link OutputStream}, a {@link JournalStreamWriter} is
+ * started by passing {@code null} as the {@link OutputStream}, for example
+ * {@code StreamWriterManager.start(null, new JournalStreamWriter(journal), queue)}.
+ * The {@link Journal} is closed when the {@link StreamWriterManager} stops.
+ * Use a {@link JournalStreamReader} to read the objects back.
+ * </p>
+ */
+public class JournalStreamWriter implements StreamWriter<Journal, Serializable> {
+
+    /**
+     * A {@link ByteArrayOutputStream} whose internal buffer can be appended to
+     * the {@link Journal} without copying it.
+     */
+    private static class BodyOutputStream extends ByteArrayOutputStream {
+
+        private void appendTo(Journal journal, byte kind) throws IOException {
+            journal.append(kind, buf, 0, count);
+        }
+    }
+
+    private final Journal          journal;
+    private final BodyOutputStream body       = new BodyOutputStream();
+    private final DataOutputStream bodyStream = new PacketOutputStream(body);
+
+    public JournalStreamWriter(Journal journal) {
+        if (journal == null) {
+            throw new NullPointerException("The journal cannot be null");
+        }
+        this.journal = journal;
+    }
+
+    @Override
+    public Journal preLoop(OutputStream outputStream) throws IOException {
+        return journal;
+    }
+
+    @Override
+    public void writeOne(Journal journal, Serializable objectToWrite) throws IOException {
+        body.reset();
+        if (objectToWrite instanceof DataPacket) {
+            bodyStream.writeUTF(objectToWrite.getClass().getName());
+            ((DataPacket) objectToWrite).write(bodyStream);
+            body.appendTo(journal, Journal.DATA_PACKET);
+        } else {
+            ObjectOutputStream objectStream = new ObjectOutputStream(body);
+            objectStream.writeObject(objectToWrite);
+            objectStream.flush();
+            body.appendTo(journal, Journal.SERIALIZABLE);
+        }
+    }
+
+    @Override
+    public void preClose(OutputStream outputStream, Journal journal) {
+        this.journal.close();
+    }
+}
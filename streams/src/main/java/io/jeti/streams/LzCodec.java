@@ -0,0 +1,141 @@
+package io.jeti.streams;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A small, pure Java LZ77 codec in the spirit of LZ4, used by
+ * {@link Compression}. It trades compression ratio for speed: matches are
+ * only found through a single hash table of 4 byte sequences, and nothing is
+ * entropy coded. A compressed block is a series of sequences, each of which is
+ * a varint literal length, the literal bytes, a varint offset, and a varint
+ * match length (minus {@link #MIN_MATCH}), except for the last one, which
+ * only has literals.
+ */
+final class LzCodec {
+
+    static final int         MIN_MATCH = 4;
+    private static final int HASH_BITS = 12;
+    private static final int SKIP_BITS = 6;
+
+    private final int[]      table     = new int[1 << HASH_BITS];
+
+    /**
+     * Compress {@code length} bytes of {@code src} into {@code dst}, starting
+     * at {@code dstOffset}.
+     *
+     * @return The number of compressed bytes, or -1 if they would not fit
+     *         below {@code dstLimit}.
+     */
+    int compress(byte[] src, int length, byte[] dst, int dstOffset, int dstLimit) {
+        Arrays.fill(table, -1);
+        int anchor = 0;
+        int position = 0;
+        int output = dstOffset;
+        int last = length - MIN_MATCH;
+        while (position <= last) {
+            int sequence = readInt(src, position);
+            int hash = (sequence * -1640531535) >>> (Integer.SIZE - HASH_BITS);
+            int reference = table[hash];
+            table[hash] = position;
+            if (reference < 0 || readInt(src, reference) != sequence) {
+                /* Step faster through data which does not seem to compress. */
+                position += 1 + ((position - anchor) >>> SKIP_BITS);
+                continue;
+            }
+            int match = MIN_MATCH;
+            while (position + match < length && src[reference + match] == src[position + match]) {
+                match++;
+            }
+            int literals = position - anchor;
+            if (output + literals + 3 * 5 > dstLimit) {
+                return -1;
+            }
+            output = putVarInt(dst, output, literals);
+            System.arraycopy(src, anchor, dst, output, literals);
+            output += literals;
+            output = putVarInt(dst, output, position - reference);
+            output = putVarInt(dst, output, match - MIN_MATCH);
+            position += match;
+            anchor = position;
+        }
+        int literals = length - anchor;
+        if (output + literals + 5 > dstLimit) {
+            return -1;
+        }
+        output = putVarInt(dst, output, literals);
+        System.arraycopy(src, anchor, dst, output, literals);
+        output += literals;
+        return output - dstOffset;
+    }
+
+    /**
+     * Decompress {@code length} bytes of {@code src} into exactly
+     * {@code rawLength} bytes of {@code dst}.
+     */
+    static void decompress(byte[] src, int length, byte[] dst, int rawLength)
+            throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(src, 0, length);
+        int output = 0;
+        try {
+            while (true) {
+                int literals = getVarInt(in);
+                if (literals < 0 || literals > rawLength - output) {
+                    throw new IOException("Received a corrupt block");
+                }
+                in.get(dst, output, literals);
+                output += literals;
+                if (output == rawLength) {
+                    break;
+                }
+                int offset = getVarInt(in);
+                int match = getVarInt(in) + MIN_MATCH;
+                if (offset <= 0 || offset > output || match < MIN_MATCH
+                        || match > rawLength - output) {
+                    throw new IOException("Received a corrupt block");
+                }
+                /* The match may overlap the bytes it is copying. */
+                for (int end = output + match; output < end; output++) {
+                    dst[output] = dst[output - offset];
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Received a truncated block", e);
+        }
+        if (in.hasRemaining()) {
+            throw new IOException("Received a corrupt block");
+        }
+    }
+
+    /**
+     * Write a varint into {@code dst} at {@code offset}, which needs at most 5
+     * bytes, and return the offset after it.
+     */
+    static int putVarInt(byte[] dst, int offset, int value) {
+        while ((value & ~0x7F) != 0) {
+            dst[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        dst[offset++] = (byte) value;
+        return offset;
+    }
+
+    private static int getVarInt(ByteBuffer in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Received a malformed varint");
+    }
+
+    private static int readInt(byte[] src, int offset) {
+        return (src[offset] & 0xFF) | (src[offset + 1] & 0xFF) << 8
+                | (src[offset + 2] & 0xFF) << 16 | (src[offset + 3] & 0xFF) << 24;
+    }
+}
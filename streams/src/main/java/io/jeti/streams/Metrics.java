@@ -0,0 +1,359 @@
+package io.jeti.streams;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * <p>
+ * A registry of named counters, {@link Histogram}s, and gauges, which can be
+ * polled with {@link #snapshot()} (or exposed over JMX with
+ * {@link MetricsJmx}). Counters are striped {@link LongAdder}s and histograms
+ * are lock-free, so the instrumentation is cheap enough to leave on at full
+ * load.
+ * </p>
+ * <p>
+ * The {@code instrument} methods wrap a {@link StreamReader},
+ * {@link StreamWriter}, or {@link Sink}, and record the following under the
+ * given prefix: the number of objects, the number of bytes read or written,
+ * the number of failures, the time spent per object (in nanoseconds, not
+ * counting the time a reader waits for the object to arrive), and the number
+ * of objects of each type. Queue depths can be added as gauges, for
+ * example {@code metrics.gauge("writer.queue", queue::size)}.
+ * </p>
+ */
+public class Metrics {
+
+    private final ConcurrentMap<String, LongAdder>    counters   = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Histogram>    histograms = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongSupplier> gauges     = new ConcurrentHashMap<>();
+
+    /**
+     * @return The counter with the specified name, which is created if needed.
+     */
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /**
+     * @return The {@link Histogram} with the specified name, which is created
+     *         if needed.
+     */
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new Histogram());
+    }
+
+    /**
+     * Register a gauge, whose value is read whenever a snapshot is taken.
+     */
+    public void gauge(String name, LongSupplier gauge) {
+        if (gauge == null) {
+            throw new NullPointerException("The gauge cannot be null");
+        }
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * @return The current values of all of the counters and gauges, and
+     *         snapshots of all of the {@link Histogram}s, sorted by name.
+     */
+    public Snapshot snapshot() {
+        Map<String, Long> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.sum()));
+        gauges.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+        Map<String, Histogram.Snapshot> histogramSnapshots = new TreeMap<>();
+        histograms.forEach((name, histogram) -> histogramSnapshots.put(name, histogram.snapshot()));
+        return new Snapshot(values, histogramSnapshots);
+    }
+
+    /**
+     * A point-in-time copy of the {@link Metrics}.
+     */
+    public static class Snapshot {
+
+        private final Map<String, Long>               values;
+        private final Map<String, Histogram.Snapshot> histograms;
+
+        private Snapshot(Map<String, Long> values, Map<String, Histogram.Snapshot> histograms) {
+            this.values = values;
+            this.histograms = histograms;
+        }
+
+        /**
+         * @return The values of the counters and gauges, by name.
+         */
+        public Map<String, Long> values() {
+            return values;
+        }
+
+        /**
+         * @return The snapshots of the {@link Histogram}s, by name.
+         */
+        public Map<String, Histogram.Snapshot> histograms() {
+            return histograms;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            values.forEach((name, value) -> builder.append(name).append(" = ").append(value)
+                    .append('\n'));
+            histograms.forEach((name, histogram) -> builder.append(name).append(": ")
+                    .append(histogram).append('\n'));
+            return builder.toString();
+        }
+    }
+
+    /**
+     * Counts the bytes written by an instrumented {@link StreamWriter},
+     * including those sent straight to the channel underneath.
+     */
+    private static class CountingOutputStream extends FilterOutputStream
+            implements ByteChannels.WritableBacked {
+
+        private final LongAdder bytes;
+
+        private CountingOutputStream(OutputStream out, LongAdder bytes) {
+            super(out);
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            bytes.increment();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            bytes.add(len);
+        }
+
+        @Override
+        public WritableByteChannel channel() throws IOException {
+            return ByteChannels.channelOf(out);
+        }
+
+        @Override
+        public void transferred(long n) {
+            bytes.add(n);
+            ByteChannels.transferred(out, n);
+        }
+    }
+
+    /**
+     * Counts the objects of each class under {@code prefix.type.<class name>}.
+     */
+    private class TypeCounter {
+
+        private final String                         prefix;
+        private final ConcurrentMap<Class, LongAdder> byClass = new ConcurrentHashMap<>();
+
+        private TypeCounter(String prefix) {
+            this.prefix = prefix + ".type.";
+        }
+
+        private void count(Object obj) {
+            if (obj != null) {
+                LongAdder counter = byClass.get(obj.getClass());
+                if (counter == null) {
+                    counter = counter(prefix + obj.getClass().getName());
+                    byClass.put(obj.getClass(), counter);
+                }
+                counter.increment();
+            }
+        }
+    }
+
+    /**
+     * Wrap a {@link StreamReader}, recording under {@code prefix.objects},
+     * {@code prefix.bytes}, {@code prefix.failures}, {@code prefix.nanos}, and
+     * {@code prefix.type.*}. The time per object is measured from when the
+     * first bytes of the object were read from the {@link InputStream} (or
+     * from the start of {@link StreamReader#readOne(Object)}, if they had
+     * already been buffered), so that it does not include waiting for the
+     * object to arrive. Under a {@link SelectorStreamReaderManager}, the
+     * attempts which are abandoned because the object has not fully arrived
+     * are not counted.
+     * <p>
+     * The wrapper is a plain {@link StreamReader}, so a
+     * {@link SelectorStreamReaderManager} cannot tell that it wraps a
+     * {@link FramedDataPacketStreamReader}. Register it with
+     * {@link SelectorStreamReaderManager#frames(int)} explicitly to keep the
+     * framing. Likewise, the wrapped reader cannot reach the channel
+     * underneath the {@link InputStream} (see {@link ByteChannels}), so blobs
+     * are copied through the heap.
+     * </p>
+     */
+    public <S, O> StreamReader<S, O> instrument(String prefix, StreamReader<S, O> reader) {
+        LongAdder objects = counter(prefix + ".objects");
+        LongAdder bytes = counter(prefix + ".bytes");
+        LongAdder failures = counter(prefix + ".failures");
+        Histogram nanos = histogram(prefix + ".nanos");
+        TypeCounter types = new TypeCounter(prefix);
+        return new StreamReader<S, O>() {
+
+            /**
+             * When the first read of the current object returned, or 0 if
+             * nothing has been read for it yet.
+             */
+            private long firstRead;
+
+            private void received(int n) {
+                if (n > 0) {
+                    bytes.add(n);
+                    if (firstRead == 0) {
+                        firstRead = System.nanoTime();
+                    }
+                }
+            }
+
+            @Override
+            public S preLoop(InputStream inputStream) throws IOException {
+                return reader.preLoop(inputStream == null ? null
+                        : new FilterInputStream(inputStream) {
+
+                            @Override
+                            public int read() throws IOException {
+                                int b = in.read();
+                                received(b >= 0 ? 1 : 0);
+                                return b;
+                            }
+
+                            @Override
+                            public int read(byte[] b, int off, int len) throws IOException {
+                                int n = in.read(b, off, len);
+                                received(n);
+                                return n;
+                            }
+                        });
+            }
+
+            @Override
+            public O readOne(S stream) throws IOException, ClassNotFoundException {
+                firstRead = 0;
+                long start = System.nanoTime();
+                O obj;
+                try {
+                    obj = reader.readOne(stream);
+                } catch (SelectorStreamReaderManager.UnderflowException e) {
+                    throw e;
+                } catch (IOException | ClassNotFoundException | RuntimeException e) {
+                    failures.increment();
+                    throw e;
+                }
+                nanos.record(System.nanoTime() - Math.max(start, firstRead));
+                objects.increment();
+                types.count(obj);
+                return obj;
+            }
+
+            @Override
+            public void stop(Thread thread) {
+                reader.stop(thread);
+            }
+
+            @Override
+            public void preClose(InputStream inputStream, S stream) {
+                reader.preClose(inputStream, stream);
+            }
+
+            @Override
+            public void closed() {
+                reader.closed();
+            }
+        };
+    }
+
+    /**
+     * Wrap a {@link StreamWriter}, recording under {@code prefix.objects},
+     * {@code prefix.bytes}, {@code prefix.failures}, {@code prefix.nanos}, and
+     * {@code prefix.type.*}. The wrapped writer can still reach the channel
+     * underneath the {@link OutputStream} (see {@link ByteChannels}), and the
+     * bytes sent through it are counted as well.
+     */
+    public <S, O> StreamWriter<S, O> instrument(String prefix, StreamWriter<S, O> writer) {
+        LongAdder objects = counter(prefix + ".objects");
+        LongAdder bytes = counter(prefix + ".bytes");
+        LongAdder failures = counter(prefix + ".failures");
+        Histogram nanos = histogram(prefix + ".nanos");
+        TypeCounter types = new TypeCounter(prefix);
+        return new StreamWriter<S, O>() {
+
+            @Override
+            public S preLoop(OutputStream outputStream) throws IOException {
+                return writer.preLoop(outputStream == null ? null
+                        : new CountingOutputStream(outputStream, bytes));
+            }
+
+            @Override
+            public void writeOne(S stream, O objectToWrite) throws IOException {
+                long start = System.nanoTime();
+                try {
+                    writer.writeOne(stream, objectToWrite);
+                } catch (IOException | RuntimeException e) {
+                    failures.increment();
+                    throw e;
+                }
+                nanos.record(System.nanoTime() - start);
+                objects.increment();
+                types.count(objectToWrite);
+            }
+
+            @Override
+            public void flush(S stream) throws IOException {
+                writer.flush(stream);
+            }
+
+            @Override
+            public void stop(Thread thread) {
+                writer.stop(thread);
+            }
+
+            @Override
+            public void preClose(OutputStream outputStream, S stream) {
+                writer.preClose(outputStream, stream);
+            }
+
+            @Override
+            public void closed() {
+                writer.closed();
+            }
+        };
+    }
+
+    /**
+     * Wrap a {@link Sink}, recording under {@code prefix.objects},
+     * {@code prefix.failures}, {@code prefix.nanos}, and
+     * {@code prefix.type.*}. Wrap the downstream {@link Sink} of one of the
+     * {@link Sinks} to measure the processing time on its {@link Thread}s.
+     */
+    public <T> Sink<T> instrument(String prefix, Sink<T> sink) {
+        LongAdder objects = counter(prefix + ".objects");
+        LongAdder failures = counter(prefix + ".failures");
+        Histogram nanos = histogram(prefix + ".nanos");
+        TypeCounter types = new TypeCounter(prefix);
+        return obj -> {
+            long start = System.nanoTime();
+            try {
+                sink.process(obj);
+            } catch (RuntimeException e) {
+                failures.increment();
+                throw e;
+            }
+            nanos.record(System.nanoTime() - start);
+            objects.increment();
+            types.count(obj);
+        };
+    }
+}
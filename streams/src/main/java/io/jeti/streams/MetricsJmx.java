@@ -0,0 +1,117 @@
+package io.jeti.streams;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * Exposes {@link Metrics} over JMX, as a read-only MBean with one attribute
+ * per counter and gauge, and {@code .count}, {@code .mean}, {@code .p50},
+ * {@code .p99}, and {@code .max} attributes per {@link Histogram}. This lives
+ * in its own class, so that platforms without {@code javax.management} (such
+ * as Android) can still use {@link Metrics}.
+ */
+public final class MetricsJmx {
+
+    private MetricsJmx() {
+    }
+
+    /**
+     * Register the {@link Metrics} with the platform MBean server under the
+     * specified object name, such as {@code "io.jeti.streams:type=Gateway"}.
+     *
+     * @return The {@link ObjectName}, which can be used to unregister it.
+     */
+    public static ObjectName register(Metrics metrics, String name) throws JMException {
+        ObjectName objectName = new ObjectName(name);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(metrics),
+                objectName);
+        return objectName;
+    }
+
+    private static class MetricsMBean implements DynamicMBean {
+
+        private final Metrics metrics;
+
+        private MetricsMBean(Metrics metrics) {
+            this.metrics = metrics;
+        }
+
+        private Map<String, Object> attributes() {
+            Metrics.Snapshot snapshot = metrics.snapshot();
+            Map<String, Object> attributes = new LinkedHashMap<>(snapshot.values());
+            snapshot.histograms().forEach((name, histogram) -> {
+                attributes.put(name + ".count", histogram.count());
+                attributes.put(name + ".mean", (long) histogram.mean());
+                attributes.put(name + ".p50", histogram.percentile(0.5));
+                attributes.put(name + ".p99", histogram.percentile(0.99));
+                attributes.put(name + ".max", histogram.max());
+            });
+            return attributes;
+        }
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Object value = attributes().get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return value;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] names) {
+            Map<String, Object> attributes = attributes();
+            AttributeList list = new AttributeList();
+            for (String name : names) {
+                if (attributes.containsKey(name)) {
+                    list.add(new Attribute(name, attributes.get(name)));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(
+                    "The metrics are read-only: " + attribute.getName());
+        }
+
+        /**
+         * @return An empty list, since none of the attributes can be set.
+         */
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature)
+                throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(actionName),
+                    "The metrics have no operations");
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> infos = new ArrayList<>();
+            for (String name : attributes().keySet()) {
+                infos.add(new MBeanAttributeInfo(name, Long.class.getName(), name, true, false,
+                        false));
+            }
+            return new MBeanInfo(Metrics.class.getName(), "Stream metrics",
+                    infos.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+    }
+}
@@ -0,0 +1,673 @@
+package io.jeti.streams;
+
+import io.jeti.streams.StreamWriterManager.FlushPolicy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * <p>
+ * Carries many logical channels over a single connection, so that separate
+ * flows (telemetry, commands, file chunks, ...) between two peers can share
+ * one socket instead of opening one each. Each channel looks like a plain
+ * {@link OutputStream} on one end and {@link InputStream} on the other, so any
+ * {@link StreamWriter} and {@link StreamReader} can be used on it, either
+ * directly, or through {@link #send} and {@link #receive}, which start a
+ * {@link StreamWriterManager} and {@link StreamReaderManager} on a channel.
+ * </p>
+ * <p>
+ * The bytes written to a channel are sent in frames of at most
+ * {@code maxFrameBytes} bytes, so large writes on one channel are interleaved
+ * with the writes on the others. Every frame looks like this:
+ * </p>
+ * <pre>
+ * byte   kind    (DATA, CREDIT, or CLOSE)
+ * varint channel
+ * DATA:   varint length, then the bytes
+ * CREDIT: varint number of bytes the sender may send again
+ * CLOSE:  nothing else; the channel's InputStream reaches its end
+ * </pre>
+ * <p>
+ * Each channel has its own flow control window of {@code windowBytes}, which
+ * must be the same on both ends. A writer may only send that many bytes that
+ * the reader has not read yet, after which it blocks until the reader sends
+ * credits back. So a channel whose reader falls behind stops its own writer,
+ * without holding up the other channels on the connection.
+ * </p>
+ * <p>
+ * A channel is forgotten as soon as nothing is left to do on it: its
+ * {@link OutputStream} was closed (or never asked for) and all of the bytes
+ * written to it have been read by the other end, and its {@link InputStream}
+ * was read up to its end (or never asked for, with nothing in it). After that,
+ * its id may be used again, and refers to a new channel. At most
+ * {@code maxChannels} channels can be open at once, and a peer which opens
+ * more fails the connection.
+ * </p>
+ */
+public class Multiplexer {
+
+    static final int                    DATA                 = 0;
+    static final int                    CREDIT               = 1;
+    static final int                    CLOSE                = 2;
+
+    private static final int            windowBytesDefault   = 1 << 16;
+    private static final int            maxFrameBytesDefault = 1 << 14;
+    private static final int            maxChannelsDefault   = 256;
+
+    private final InputStream           inputStream;
+    private final OutputStream          outputStream;
+    private final DataOutputStream      out;
+    private final int                   windowBytes;
+    private final int                   maxFrameBytes;
+    private final int                   maxChannels;
+    private final Map<Integer, Channel> channels             = new HashMap<>();
+    private final Runnable              loop;
+    private Thread                      thread;
+    private boolean                     stopped;
+    private volatile IOException        failure;
+
+    private Multiplexer(InputStream inputStream, OutputStream outputStream, int windowBytes,
+            int maxFrameBytes, int maxChannels) {
+        this.inputStream = inputStream;
+        this.outputStream = outputStream;
+        this.out = new DataOutputStream(new BufferedOutputStream(outputStream, maxFrameBytes + 16));
+        this.windowBytes = windowBytes;
+        this.maxFrameBytes = maxFrameBytes;
+        this.maxChannels = maxChannels;
+        this.loop = () -> {
+            try {
+                if (!running()) {
+                    return;
+                }
+                demultiplex(new DataInputStream(new BufferedInputStream(inputStream)));
+            } catch (EOFException e) {
+                fail(null);
+            } catch (IOException e) {
+                fail(e);
+            } finally {
+                finished();
+            }
+        };
+    }
+
+    /**
+     * Create, start, and return a {@link Multiplexer} over the two ends of a
+     * connection, with default window and frame sizes, which reads on a new,
+     * dedicated {@link Thread}.
+     */
+    public static Multiplexer start(InputStream inputStream, OutputStream outputStream) {
+        return start(inputStream, outputStream, windowBytesDefault, maxFrameBytesDefault,
+                task -> new Thread(task).start());
+    }
+
+    /**
+     * Create, start, and return a {@link Multiplexer}, whose reading loop is
+     * run by the specified {@link Executor}.
+     *
+     * @param windowBytes: The number of bytes which may be in flight on each
+     *            channel. This must be the same on both ends.
+     * @param maxFrameBytes: The maximum number of bytes sent in one frame.
+     */
+    public static Multiplexer start(InputStream inputStream, OutputStream outputStream,
+            int windowBytes, int maxFrameBytes, Executor executor) {
+        return start(inputStream, outputStream, windowBytes, maxFrameBytes, maxChannelsDefault,
+                executor);
+    }
+
+    /**
+     * Create, start, and return a {@link Multiplexer}, whose reading loop is
+     * run by the specified {@link Executor}.
+     *
+     * @param windowBytes: The number of bytes which may be in flight on each
+     *            channel. This must be the same on both ends.
+     * @param maxFrameBytes: The maximum number of bytes sent in one frame.
+     * @param maxChannels: The maximum number of channels which may be open at
+     *            once. Every channel holds a buffer of {@code windowBytes} plus
+     *            {@code maxFrameBytes}.
+     */
+    public static Multiplexer start(InputStream inputStream, OutputStream outputStream,
+            int windowBytes, int maxFrameBytes, int maxChannels, Executor executor) {
+        if (inputStream == null || outputStream == null) {
+            throw new NullPointerException("The streams cannot be null");
+        }
+        if (executor == null) {
+            throw new NullPointerException("The executor cannot be null");
+        }
+        if (windowBytes < 1 || maxFrameBytes < 1) {
+            throw new IllegalArgumentException("The window and frame sizes must be positive");
+        }
+        if (maxChannels < 1) {
+            throw new IllegalArgumentException("The maximum number of channels must be positive");
+        }
+        Multiplexer multiplexer = new Multiplexer(inputStream, outputStream, windowBytes,
+                maxFrameBytes, maxChannels);
+        executor.execute(multiplexer.loop);
+        return multiplexer;
+    }
+
+    /**
+     * @return The {@link OutputStream} of a channel. Closing it closes the
+     *         channel, and the {@link InputStream} of the channel on the other
+     *         end reaches its end.
+     * @throws IllegalStateException If {@code maxChannels} channels are
+     *             already open.
+     */
+    public OutputStream output(int channel) {
+        return open(channel, false).output;
+    }
+
+    /**
+     * @return The {@link InputStream} of a channel.
+     * @throws IllegalStateException If {@code maxChannels} channels are
+     *             already open.
+     */
+    public InputStream input(int channel) {
+        return open(channel, true).input;
+    }
+
+    /**
+     * @return The channel with this id, after marking its
+     *         {@link InputStream} or {@link OutputStream} as being used.
+     */
+    private synchronized Channel open(int id, boolean input) {
+        Channel channel = channel(id);
+        if (channel == null) {
+            throw new IllegalStateException("There are already " + maxChannels
+                    + " open channels");
+        }
+        synchronized (channel) {
+            if (input) {
+                channel.inputOpened = true;
+            } else {
+                channel.outputOpened = true;
+            }
+        }
+        return channel;
+    }
+
+    /**
+     * Start a {@link StreamWriterManager} which writes to a channel.
+     */
+    public <S, O> StreamWriterManager send(int channel, StreamWriter<S, O> writer,
+            BlockingQueue<O> queue, FlushPolicy policy, Executor executor) {
+        return StreamWriterManager.start(output(channel), writer, queue, policy, executor);
+    }
+
+    /**
+     * Start a {@link StreamWriterManager} which writes to a channel, on a new,
+     * dedicated {@link Thread}.
+     */
+    public <S, O> StreamWriterManager send(int channel, StreamWriter<S, O> writer,
+            BlockingQueue<O> queue) {
+        return StreamWriterManager.start(output(channel), writer, queue);
+    }
+
+    /**
+     * Start a {@link StreamReaderManager} which reads from a channel, and
+     * passes the objects to the channel's {@link Sink}.
+     */
+    public <S, O> StreamReaderManager receive(int channel, StreamReader<S, O> reader,
+            Sink<O> sink, Executor executor) {
+        return StreamReaderManager.start(input(channel), reader, sink, executor);
+    }
+
+    /**
+     * Start a {@link StreamReaderManager} which reads from a channel on a new,
+     * dedicated {@link Thread}.
+     */
+    public <S, O> StreamReaderManager receive(int channel, StreamReader<S, O> reader,
+            Sink<O> sink) {
+        return StreamReaderManager.start(input(channel), reader, sink);
+    }
+
+    /**
+     * Stop the reading loop, and close the underlying streams. Every channel
+     * is closed with it.
+     */
+    public void stop() {
+        synchronized (this) {
+            stopped = true;
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+        fail(null);
+        try {
+            inputStream.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        try {
+            outputStream.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return The channel with this id, which is created if needed, or null
+     *         if there are already {@code maxChannels} channels.
+     */
+    private synchronized Channel channel(int id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("The channel cannot be negative");
+        }
+        Channel channel = channels.get(id);
+        if (channel == null) {
+            if (channels.size() >= maxChannels) {
+                return null;
+            }
+            channel = new Channel(id);
+            channels.put(id, channel);
+            if (failure != null) {
+                channel.ended = true;
+            }
+        }
+        return channel;
+    }
+
+    /**
+     * Forget a channel if nothing is left to do on it. Since this holds the
+     * lock of the {@link Multiplexer}, nobody can look the channel up and
+     * start using it meanwhile.
+     */
+    private synchronized void remove(Channel channel) {
+        synchronized (channel) {
+            if (!channel.removed && channel.done()) {
+                channel.removed = true;
+                channels.remove(channel.id);
+            }
+        }
+    }
+
+    private synchronized boolean running() {
+        thread = Thread.currentThread();
+        return !stopped;
+    }
+
+    private synchronized void finished() {
+        if (thread == Thread.currentThread()) {
+            Thread.interrupted();
+        }
+        thread = null;
+        stopped = true;
+    }
+
+    /**
+     * Wake up everything waiting on a channel, since no more frames will
+     * arrive. A null failure means the connection ended normally.
+     */
+    private void fail(IOException e) {
+        Channel[] all;
+        synchronized (this) {
+            if (failure == null) {
+                failure = e != null ? e : new EOFException("The connection was closed");
+            }
+            all = channels.values().toArray(new Channel[0]);
+        }
+        for (Channel channel : all) {
+            synchronized (channel) {
+                channel.ended = true;
+                channel.notifyAll();
+            }
+        }
+    }
+
+    private IOException failure() {
+        return failure;
+    }
+
+    private void demultiplex(DataInputStream in) throws IOException {
+        while (true) {
+            int kind = in.readUnsignedByte();
+            int id = Varints.readVarInt(in);
+            if (id < 0) {
+                throw new IOException("Received a negative channel: " + id);
+            }
+            Channel channel = channel(id);
+            if (channel == null) {
+                throw new IOException("The peer opened more than " + maxChannels + " channels");
+            }
+            if (kind == DATA) {
+                int length = Varints.readVarInt(in);
+                while (!channel.receive(in, length)) {
+                    /* The channel was just forgotten, so the frame is for a new one. */
+                    channel = channel(id);
+                    if (channel == null) {
+                        throw new IOException("The peer opened more than " + maxChannels
+                                + " channels");
+                    }
+                }
+            } else if (kind == CREDIT) {
+                channel.credit(Varints.readVarInt(in));
+            } else if (kind == CLOSE) {
+                while (!channel.end()) {
+                    channel = channel(id);
+                    if (channel == null) {
+                        throw new IOException("The peer opened more than " + maxChannels
+                                + " channels");
+                    }
+                }
+                remove(channel);
+            } else {
+                throw new IOException("Received an unknown frame kind: " + kind);
+            }
+        }
+    }
+
+    private void writeFrame(int kind, int id, int value, byte[] b, int off, int len)
+            throws IOException {
+        synchronized (out) {
+            out.writeByte(kind);
+            Varints.writeVarInt(out, id);
+            if (kind != CLOSE) {
+                Varints.writeVarInt(out, value);
+            }
+            if (len > 0) {
+                out.write(b, off, len);
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * The state of one channel. The fields are guarded by the channel itself.
+     */
+    private class Channel {
+
+        private final int          id;
+        private final byte[]       buffer = new byte[windowBytes];
+        private final OutputStream output = new ChannelOutputStream(this);
+        private final InputStream  input  = new ChannelInputStream(this);
+        private int                head;
+        private int                count;
+        private int                unacknowledged;
+        private int                credits = windowBytes;
+        private boolean            ended;
+        private boolean            inputOpened;
+        private boolean            inputClosed;
+        private boolean            outputOpened;
+        private boolean            outputClosed;
+        private boolean            receiving;
+        private boolean            removed;
+
+        private Channel(int id) {
+            this.id = id;
+        }
+
+        /**
+         * @return Whether nothing is left to do on this channel. Called with
+         *         the lock held.
+         */
+        private boolean done() {
+            return !receiving && count == 0 && unacknowledged == 0 && credits == windowBytes
+                    && (outputClosed || !outputOpened) && (inputOpened ? ended : !ended);
+        }
+
+        /**
+         * Handle a CLOSE frame, unless the channel was forgotten already.
+         */
+        private synchronized boolean end() {
+            if (removed) {
+                return false;
+            }
+            ended = true;
+            notifyAll();
+            return true;
+        }
+
+        /**
+         * Copy a DATA frame from the connection into the receive buffer,
+         * unless the channel was forgotten already.
+         */
+        private boolean receive(DataInputStream in, int length) throws IOException {
+            if (length < 0) {
+                throw new IOException("Received a negative frame length: " + length);
+            }
+            boolean discard;
+            synchronized (this) {
+                if (removed) {
+                    return false;
+                }
+                if (length > buffer.length - count) {
+                    throw new IOException("Channel " + id + " received more than its window");
+                }
+                discard = inputClosed;
+                receiving = true;
+            }
+            if (discard) {
+                in.skipBytes(length);
+                synchronized (this) {
+                    receiving = false;
+                }
+                sendCredits(length);
+                return true;
+            }
+            /*
+             * Only the connection reads into the free part of the buffer, so it
+             * can do so without holding the lock, and publish the bytes after.
+             */
+            int tail;
+            synchronized (this) {
+                tail = (head + count) % buffer.length;
+            }
+            int first = Math.min(length, buffer.length - tail);
+            in.readFully(buffer, tail, first);
+            in.readFully(buffer, 0, length - first);
+            synchronized (this) {
+                receiving = false;
+                discard = inputClosed;
+                if (!discard) {
+                    count += length;
+                    notifyAll();
+                }
+            }
+            if (discard) {
+                sendCredits(length);
+            }
+            return true;
+        }
+
+        private void credit(int bytes) throws IOException {
+            synchronized (this) {
+                if (bytes < 0 || credits + bytes > windowBytes) {
+                    throw new IOException("Channel " + id + " received too many credits");
+                }
+                credits += bytes;
+                notifyAll();
+            }
+            remove(this);
+        }
+
+        private void sendCredits(int bytes) throws IOException {
+            writeFrame(CREDIT, id, bytes, null, 0, 0);
+        }
+    }
+
+    private class ChannelOutputStream extends OutputStream {
+
+        private final Channel channel;
+        private final byte[]  pending = new byte[maxFrameBytes];
+        private int           count;
+        private boolean       closed;
+
+        private ChannelOutputStream(Channel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            if (count == pending.length) {
+                send();
+            }
+            pending[count++] = (byte) b;
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == pending.length) {
+                    send();
+                }
+                int n = Math.min(len, pending.length - count);
+                System.arraycopy(b, off, pending, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            send();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            try {
+                send();
+                writeFrame(CLOSE, channel.id, 0, null, 0, 0);
+            } finally {
+                closed = true;
+                synchronized (channel) {
+                    channel.outputClosed = true;
+                }
+                remove(channel);
+            }
+        }
+
+        /**
+         * Send the pending bytes, waiting for credits as needed.
+         */
+        private void send() throws IOException {
+            if (closed) {
+                throw new IOException("Channel " + channel.id + " is closed");
+            }
+            int sent = 0;
+            while (sent < count) {
+                int n;
+                synchronized (channel) {
+                    while (channel.credits == 0) {
+                        IOException e = failure();
+                        if (e != null) {
+                            throw new IOException("The connection failed", e);
+                        }
+                        try {
+                            channel.wait();
+                        } catch (InterruptedException e2) {
+                            throw new InterruptedIOException("Interrupted while waiting for credits");
+                        }
+                    }
+                    n = Math.min(count - sent, channel.credits);
+                    channel.credits -= n;
+                }
+                writeFrame(DATA, channel.id, n, pending, sent, n);
+                sent += n;
+            }
+            count = 0;
+        }
+    }
+
+    private class ChannelInputStream extends InputStream {
+
+        private final Channel channel;
+
+        private ChannelInputStream(Channel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int n;
+            int credits = 0;
+            synchronized (channel) {
+                while (channel.count == 0) {
+                    if (channel.inputClosed) {
+                        throw new IOException("Channel " + channel.id + " is closed");
+                    }
+                    if (channel.ended) {
+                        IOException e = failure();
+                        if (e == null || e instanceof EOFException) {
+                            return -1;
+                        }
+                        throw new IOException("The connection failed", e);
+                    }
+                    try {
+                        channel.wait();
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException("Interrupted while waiting for data");
+                    }
+                }
+                n = Math.min(len, Math.min(channel.count, channel.buffer.length - channel.head));
+                System.arraycopy(channel.buffer, channel.head, b, off, n);
+                channel.head = (channel.head + n) % channel.buffer.length;
+                channel.count -= n;
+                channel.unacknowledged += n;
+                /* Return credits in chunks, rather than for every read. */
+                if (channel.unacknowledged >= Math.min(maxFrameBytes, windowBytes / 2)
+                        || channel.count == 0) {
+                    credits = channel.unacknowledged;
+                    channel.unacknowledged = 0;
+                }
+            }
+            if (credits > 0) {
+                /*
+                 * Forget the channel before the peer gets its last credits,
+                 * since it may then forget the channel too, and reuse the id.
+                 */
+                remove(channel);
+                channel.sendCredits(credits);
+            }
+            return n;
+        }
+
+        @Override
+        public int available() {
+            synchronized (channel) {
+                return channel.count;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            int credits;
+            synchronized (channel) {
+                if (channel.inputClosed) {
+                    return;
+                }
+                channel.inputClosed = true;
+                credits = channel.count + channel.unacknowledged;
+                channel.head = 0;
+                channel.count = 0;
+                channel.unacknowledged = 0;
+                channel.notifyAll();
+            }
+            remove(channel);
+            if (credits > 0 && failure() == null) {
+                channel.sendCredits(credits);
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package io.jeti.streams;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>
+ * Marks a class whose {@link DataPacket} codec should be generated by the
+ * annotation processor in the {@code processor} module. For a class
+ * {@code Foo}, the processor generates a {@code FooCodec} class in the same
+ * package, with static {@code write(Foo, DataOutputStream)},
+ * {@code read(DataInputStream)}, and {@code readInto(DataInputStream, Foo)}
+ * methods that write and read all of the non-static, non-transient fields in
+ * declaration order. The class then only needs to delegate to the codec:
+ * </p>
+ * <pre>
+ * &#64;Packet
+ * public class Foo implements DataPacket&lt;Foo&gt; {
+ *
+ *     int      id;
+ *     double[] values;
+ *     &#64;Packet.Nullable
+ *     String   label;
+ *
+ *     public void write(DataOutputStream stream) throws IOException {
+ *         FooCodec.write(this, stream);
+ *     }
+ *
+ *     public Foo read(DataInputStream stream) throws IOException {
+ *         return FooCodec.read(stream);
+ *     }
+ * }</pre>
+ * <p>
+ * The fields must not be private or final, and the class needs a no-argument
+ * constructor. Supported field types are the primitives and their boxes,
+ * {@link String}s, enums, arrays of any supported type, other {@link Packet}
+ * classes, and other {@link DataPacket}s with a no-argument constructor. The
+ * processor also generates a {@code GeneratedDataPackets} class in every
+ * package, whose {@code map()} method returns the {@code dataPacketMap} for
+ * all of the {@link Packet} classes in that package which implement
+ * {@link DataPacket}, ready to be passed to a {@link DataPacketStreamReader}.
+ * </p>
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface Packet {
+
+    /**
+     * Marks a field of a {@link Packet} which may be null. Such fields are
+     * preceded by a boolean on the stream. Other fields must not be null when
+     * they are written.
+     */
+    @Documented
+    @Retention(RetentionPolicy.SOURCE)
+    @Target(ElementType.FIELD)
+    @interface Nullable {
+    }
+}
@@ -0,0 +1,180 @@
+package io.jeti.streams;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * A {@link DataInputStream} with bulk methods for reading primitive arrays,
+ * such as {@link #readDoubles(double[])}, which read the bytes of many
+ * elements with a single {@link #readFully(byte[], int, int)} and convert them
+ * through a view of a reusable {@link ByteBuffer}. See
+ * {@link PacketOutputStream}. Similarly,
+ * {@link #transferTo(FileChannel, long, long)} writes bytes from the stream
+ * into a file, without copying them through the heap if the underlying stream
+ * allows it.
+ */
+public class PacketInputStream extends DataInputStream implements ByteChannels.ReadableBacked {
+
+    private static final int chunkSize = 8192;
+
+    private ByteBuffer       buffer;
+
+    public PacketInputStream(InputStream inputStream) {
+        super(inputStream);
+    }
+
+    /**
+     * @return The stream itself if it is a {@link PacketInputStream}, or a
+     *         {@link PacketInputStream} which reads through it otherwise.
+     */
+    public static PacketInputStream of(DataInputStream stream) {
+        return stream instanceof PacketInputStream ? (PacketInputStream) stream
+                : new PacketInputStream(stream);
+    }
+
+    /**
+     * Fill the next {@code bytes} bytes of the buffer from the stream.
+     */
+    private ByteBuffer fill(int bytes) throws IOException {
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(chunkSize);
+        }
+        readFully(buffer.array(), 0, bytes);
+        buffer.clear();
+        buffer.limit(bytes);
+        return buffer;
+    }
+
+    /**
+     * Read {@code count} bytes into the file, starting at {@code position}.
+     * If the underlying stream reads straight from a channel, the bytes are
+     * moved with
+     * {@link FileChannel#transferFrom(ReadableByteChannel, long, long)}.
+     * Otherwise, they are copied through the chunk buffer.
+     */
+    public void transferTo(FileChannel file, long position, long count) throws IOException {
+        ReadableByteChannel channel = channel();
+        if (channel != null) {
+            while (count > 0) {
+                long n = file.transferFrom(channel, position, count);
+                if (n <= 0) {
+                    throw new EOFException("The stream ended before all of the bytes were read");
+                }
+                position += n;
+                count -= n;
+            }
+            return;
+        }
+        while (count > 0) {
+            int n = (int) Math.min(count, chunkSize);
+            ByteBuffer chunk = fill(n);
+            while (chunk.hasRemaining()) {
+                position += file.write(chunk, position);
+            }
+            count -= n;
+        }
+    }
+
+    @Override
+    public ReadableByteChannel channel() {
+        return ByteChannels.channelOf(in);
+    }
+
+    public void readDoubles(double[] values) throws IOException {
+        readDoubles(values, 0, values.length);
+    }
+
+    public void readDoubles(double[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            int n = Math.min(length, chunkSize / Double.BYTES);
+            fill(n * Double.BYTES).asDoubleBuffer().get(values, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    public void readFloats(float[] values) throws IOException {
+        readFloats(values, 0, values.length);
+    }
+
+    public void readFloats(float[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            int n = Math.min(length, chunkSize / Float.BYTES);
+            fill(n * Float.BYTES).asFloatBuffer().get(values, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    public void readLongs(long[] values) throws IOException {
+        readLongs(values, 0, values.length);
+    }
+
+    public void readLongs(long[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            int n = Math.min(length, chunkSize / Long.BYTES);
+            fill(n * Long.BYTES).asLongBuffer().get(values, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    public void readInts(int[] values) throws IOException {
+        readInts(values, 0, values.length);
+    }
+
+    public void readInts(int[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            int n = Math.min(length, chunkSize / Integer.BYTES);
+            fill(n * Integer.BYTES).asIntBuffer().get(values, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    public void readShorts(short[] values) throws IOException {
+        readShorts(values, 0, values.length);
+    }
+
+    public void readShorts(short[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            int n = Math.min(length, chunkSize / Short.BYTES);
+            fill(n * Short.BYTES).asShortBuffer().get(values, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * See {@link Varints#readVarInt(java.io.DataInput)}.
+     */
+    public int readVarInt() throws IOException {
+        return Varints.readVarInt(this);
+    }
+
+    /**
+     * See {@link Varints#readVarLong(java.io.DataInput)}.
+     */
+    public long readVarLong() throws IOException {
+        return Varints.readVarLong(this);
+    }
+
+    /**
+     * See {@link Varints#readSignedVarInt(java.io.DataInput)}.
+     */
+    public int readSignedVarInt() throws IOException {
+        return Varints.readSignedVarInt(this);
+    }
+
+    /**
+     * See {@link Varints#readSignedVarLong(java.io.DataInput)}.
+     */
+    public long readSignedVarLong() throws IOException {
+        return Varints.readSignedVarLong(this);
+    }
+}
@@ -0,0 +1,210 @@
+package io.jeti.streams;
+
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * <p>
+ * A {@link DataOutputStream} with bulk methods for writing primitive arrays,
+ * such as {@link #writeDoubles(double[])}. Instead of writing every element
+ * separately (and therefore every byte separately) like
+ * {@link #writeDouble(double)}, the elements are copied into a reusable
+ * {@link ByteBuffer} through a view buffer, and written with a single
+ * {@link #write(byte[], int, int)} per chunk. The bytes are exactly the same
+ * as those written by the element-wise methods, so the other side can use
+ * either the bulk methods of a {@link PacketInputStream} or the element-wise
+ * methods of any {@link java.io.DataInputStream}.
+ * </p>
+ * <p>
+ * The {@link DataPacket} writers in this library pass a
+ * {@link PacketOutputStream} to {@link DataPacket#write(DataOutputStream)}, so
+ * an implementation can use {@link #of(DataOutputStream)} to get at the bulk
+ * methods without copying.
+ * </p>
+ * <p>
+ * {@link #transferFrom(FileChannel, long, long)} writes part of a file
+ * without copying it through the heap, if the underlying stream allows it
+ * (see {@link ByteChannels}).
+ * </p>
+ */
+public class PacketOutputStream extends DataOutputStream implements ByteChannels.WritableBacked {
+
+    private static final int chunkSize = 8192;
+
+    private ByteBuffer       buffer;
+
+    public PacketOutputStream(OutputStream outputStream) {
+        super(outputStream);
+    }
+
+    /**
+     * @return The stream itself if it is a {@link PacketOutputStream}, or a
+     *         {@link PacketOutputStream} which writes through to it otherwise.
+     */
+    public static PacketOutputStream of(DataOutputStream stream) {
+        return stream instanceof PacketOutputStream ? (PacketOutputStream) stream
+                : new PacketOutputStream(stream);
+    }
+
+    /**
+     * @return The chunk buffer, cleared, which is only allocated once the
+     *         bulk methods are actually used.
+     */
+    private ByteBuffer buffer() {
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(chunkSize);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    public void writeDoubles(double[] values) throws IOException {
+        writeDoubles(values, 0, values.length);
+    }
+
+    public void writeDoubles(double[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            int n = Math.min(length, chunkSize / Double.BYTES);
+            buffer().asDoubleBuffer().put(values, offset, n);
+            write(buffer.array(), 0, n * Double.BYTES);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    public void writeFloats(float[] values) throws IOException {
+        writeFloats(values, 0, values.length);
+    }
+
+    public void writeFloats(float[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            int n = Math.min(length, chunkSize / Float.BYTES);
+            buffer().asFloatBuffer().put(values, offset, n);
+            write(buffer.array(), 0, n * Float.BYTES);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    public void writeLongs(long[] values) throws IOException {
+        writeLongs(values, 0, values.length);
+    }
+
+    public void writeLongs(long[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            int n = Math.min(length, chunkSize / Long.BYTES);
+            buffer().asLongBuffer().put(values, offset, n);
+            write(buffer.array(), 0, n * Long.BYTES);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    public void writeInts(int[] values) throws IOException {
+        writeInts(values, 0, values.length);
+    }
+
+    public void writeInts(int[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            int n = Math.min(length, chunkSize / Integer.BYTES);
+            buffer().asIntBuffer().put(values, offset, n);
+            write(buffer.array(), 0, n * Integer.BYTES);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    public void writeShorts(short[] values) throws IOException {
+        writeShorts(values, 0, values.length);
+    }
+
+    public void writeShorts(short[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            int n = Math.min(length, chunkSize / Short.BYTES);
+            buffer().asShortBuffer().put(values, offset, n);
+            write(buffer.array(), 0, n * Short.BYTES);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Write {@code count} bytes of the file, starting at {@code position}.
+     * If the underlying stream is backed by a channel, the bytes are sent with
+     * {@link FileChannel#transferTo(long, long, WritableByteChannel)}, which
+     * lets the operating system move them straight from the file to the
+     * channel, and the streams in between are told how many bytes passed them
+     * (see {@link ByteChannels.WritableBacked#transferred(long)}). Otherwise,
+     * they are copied through the chunk buffer.
+     */
+    public void transferFrom(FileChannel file, long position, long count) throws IOException {
+        WritableByteChannel channel = channel();
+        if (channel != null) {
+            while (count > 0) {
+                long n = file.transferTo(position, count, channel);
+                if (n <= 0 && position >= file.size()) {
+                    throw new EOFException("The file ended before all of the bytes were sent");
+                }
+                transferred(n);
+                position += n;
+                count -= n;
+            }
+            return;
+        }
+        while (count > 0) {
+            ByteBuffer chunk = buffer();
+            chunk.limit((int) Math.min(count, chunkSize));
+            int n = file.read(chunk, position);
+            if (n < 0) {
+                throw new EOFException("The file ended before all of the bytes were sent");
+            }
+            write(chunk.array(), 0, n);
+            position += n;
+            count -= n;
+        }
+    }
+
+    @Override
+    public WritableByteChannel channel() throws IOException {
+        return ByteChannels.channelOf(out);
+    }
+
+    @Override
+    public void transferred(long bytes) {
+        written = (int) Math.min((long) written + bytes, Integer.MAX_VALUE);
+        ByteChannels.transferred(out, bytes);
+    }
+
+    /**
+     * See {@link Varints#writeVarInt(java.io.DataOutput, int)}.
+     */
+    public void writeVarInt(int value) throws IOException {
+        Varints.writeVarInt(this, value);
+    }
+
+    /**
+     * See {@link Varints#writeVarLong(java.io.DataOutput, long)}.
+     */
+    public void writeVarLong(long value) throws IOException {
+        Varints.writeVarLong(this, value);
+    }
+
+    /**
+     * See {@link Varints#writeSignedVarInt(java.io.DataOutput, int)}.
+     */
+    public void writeSignedVarInt(int value) throws IOException {
+        Varints.writeSignedVarInt(this, value);
+    }
+
+    /**
+     * See {@link Varints#writeSignedVarLong(java.io.DataOutput, long)}.
+     */
+    public void writeSignedVarLong(long value) throws IOException {
+        Varints.writeSignedVarLong(this, value);
+    }
+}
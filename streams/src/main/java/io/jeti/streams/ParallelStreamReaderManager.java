@@ -0,0 +1,215 @@
+package io.jeti.streams;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * A {@link ParallelStreamReaderManager} reads a stream written by the
+ * {@link FramedDataPacketStreamWriter}, like a {@link StreamReaderManager}
+ * running a {@link FramedDataPacketStreamReader}, but decodes the packets on
+ * several {@link Thread}s. Its I/O {@link Thread} only uses a
+ * {@link FrameReader} to slice raw {@link Frame}s out of the stream, which
+ * does not require decoding them, and hands each {@link Frame} to a pool of
+ * worker {@link Thread}s, which call {@link DataPacket#read(DataInputStream)}.
+ * </p>
+ * <p>
+ * When it is ordered, the decoded objects are passed to the {@link Sink} in
+ * the order in which they were written, one at a time, by whichever worker
+ * completes the next object in line. While that worker is busy with the
+ * {@link Sink}, the others keep decoding, and leave their objects for it to
+ * deliver. Otherwise, each worker passes its objects to the {@link Sink} as
+ * soon as they are decoded, so the {@link Sink} must be thread-safe. In both
+ * cases, at most {@code window} frames are in flight at once, which bounds the
+ * memory used when the workers fall behind. Frames of unknown types, and
+ * frames which cannot be decoded, are skipped and counted. An
+ * {@link Exception} thrown by the {@link Sink} is printed, and the next object
+ * is delivered as usual.
+ * </p>
+ */
+public class ParallelStreamReaderManager {
+
+    private static final Object   SKIPPED           = new Object();
+
+    private final Thread          thread;
+    private final ExecutorService workers;
+    private final Semaphore       window;
+    private final Object[]        results;
+    private long                  nextToDeliver;
+    private boolean               delivering;
+    private final LongAdder       unknownFrames     = new LongAdder();
+    private final LongAdder       undecodableFrames = new LongAdder();
+
+    private ParallelStreamReaderManager(InputStream stream, Map<String, DataPacket> dataPacketMap,
+            Sink<Object> sink, int threads, int window, boolean ordered) {
+        this.workers = Executors.newFixedThreadPool(threads);
+        this.window = new Semaphore(window);
+        this.results = new Object[window];
+        FrameReader frameReader = new FrameReader();
+        this.thread = new Thread(() -> {
+            try {
+                DataInputStream dataInputStream = new DataInputStream(
+                        new BufferedInputStream(stream));
+                for (long sequence = 0;; sequence++) {
+                    Frame frame = frameReader.read(dataInputStream);
+                    this.window.acquire();
+                    long position = sequence;
+                    workers.execute(() -> {
+                        Object obj = decode(dataPacketMap, frame);
+                        if (ordered) {
+                            deliver(position, obj, sink);
+                        } else {
+                            this.window.release();
+                            if (obj != SKIPPED) {
+                                process(sink, obj);
+                            }
+                        }
+                    });
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                workers.shutdown();
+                if (stream != null) {
+                    try {
+                        stream.close();
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        });
+    }
+
+    private Object decode(Map<String, DataPacket> dataPacketMap, Frame frame) {
+        DataPacket dataPacket = dataPacketMap.get(frame.type());
+        if (dataPacket == null) {
+            unknownFrames.increment();
+            return SKIPPED;
+        }
+        try {
+            Object obj = dataPacket.read(frame.payload());
+            return obj != null ? obj : SKIPPED;
+        } catch (IOException | RuntimeException e) {
+            undecodableFrames.increment();
+            return SKIPPED;
+        }
+    }
+
+    /**
+     * Store the decoded object, and unless another worker is delivering
+     * already, pass every object which is now next in line to the
+     * {@link Sink}. The {@link Sink} is called without holding the lock, so
+     * that the other workers can store their objects meanwhile, and the
+     * delivering worker picks those up before it stops.
+     */
+    private void deliver(long position, Object obj, Sink<Object> sink) {
+        synchronized (results) {
+            results[(int) (position % results.length)] = obj;
+            if (delivering) {
+                return;
+            }
+            delivering = true;
+        }
+        List<Object> batch = new ArrayList<>();
+        while (true) {
+            synchronized (results) {
+                int index;
+                while (results[index = (int) (nextToDeliver % results.length)] != null) {
+                    batch.add(results[index]);
+                    results[index] = null;
+                    nextToDeliver++;
+                }
+                if (batch.isEmpty()) {
+                    delivering = false;
+                    return;
+                }
+            }
+            for (Object next : batch) {
+                if (next != SKIPPED) {
+                    process(sink, next);
+                }
+            }
+            /* Only now, so that the delivered objects count against the window. */
+            window.release(batch.size());
+            batch.clear();
+        }
+    }
+
+    private static void process(Sink<Object> sink, Object obj) {
+        try {
+            sink.process(obj);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Create, start, and return an ordered {@link ParallelStreamReaderManager}
+     * with the specified number of decoding {@link Thread}s.
+     */
+    public static ParallelStreamReaderManager start(InputStream inputStream,
+            Map<String, DataPacket> dataPacketMap, Sink<Object> sink, int threads) {
+        return start(inputStream, dataPacketMap, sink, threads, 64 * threads, true);
+    }
+
+    /**
+     * Create, start, and return a {@link ParallelStreamReaderManager}.
+     *
+     * @param window: The maximum number of frames being decoded, or waiting to
+     *            be delivered, at once.
+     * @param ordered: Whether the objects must be passed to the {@link Sink} in
+     *            their original order.
+     */
+    public static ParallelStreamReaderManager start(InputStream inputStream,
+            Map<String, DataPacket> dataPacketMap, Sink<Object> sink, int threads, int window,
+            boolean ordered) {
+        if (dataPacketMap == null) {
+            throw new NullPointerException("The dataPacketMap cannot be null");
+        }
+        if (sink == null) {
+            throw new NullPointerException("The sink cannot be null");
+        }
+        if (threads < 1 || window < 1) {
+            throw new IllegalArgumentException("The threads and window must be positive");
+        }
+        ParallelStreamReaderManager manager = new ParallelStreamReaderManager(inputStream,
+                dataPacketMap, sink, threads, window, ordered);
+        manager.thread.start();
+        return manager;
+    }
+
+    /**
+     * Stop reading from the {@link InputStream}, and stop the decoding
+     * {@link Thread}s.
+     */
+    public void stop() {
+        thread.interrupt();
+        workers.shutdownNow();
+    }
+
+    /**
+     * @return The number of frames which were skipped because their type was
+     *         not in the {@code dataPacketMap}.
+     */
+    public long unknownFrames() {
+        return unknownFrames.sum();
+    }
+
+    /**
+     * @return The number of frames which were skipped because their payload
+     *         could not be decoded.
+     */
+    public long undecodableFrames() {
+        return undecodableFrames.sum();
+    }
+}
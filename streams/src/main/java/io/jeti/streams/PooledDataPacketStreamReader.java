@@ -0,0 +1,114 @@
+package io.jeti.streams;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * A {@link CompactDataPacketStreamReader} which does not allocate a new object
+ * for every packet of a {@link ReusableDataPacket} type. Instead, it takes an
+ * instance from a per-type pool and uses
+ * {@link ReusableDataPacket#readInto(DataInputStream, Object)} to fill it in.
+ * Once the {@link Sink} is done with an object, it must hand it back with
+ * {@link #release(Object)}, after which it will be reused by a later packet.
+ * If a pool is empty, a new instance is created, so forgetting to release an
+ * object only costs an allocation.
+ * </p>
+ * <p>
+ * Since the type ids of the compact format are used to find the pool, rather
+ * than class names, a reader in steady state produces no garbage at all.
+ * Packets of other {@link DataPacket} types are read as usual.
+ * </p>
+ */
+public class PooledDataPacketStreamReader extends CompactDataPacketStreamReader {
+
+    private static final int                          poolSizeDefault = 1024;
+
+    private final int                                 poolSize;
+    private final Map<Class, BlockingQueue<Object>>   poolsByClass    = new ConcurrentHashMap<>();
+    private BlockingQueue[]                           poolsById       = new BlockingQueue[16];
+
+    public PooledDataPacketStreamReader(Map<String, DataPacket> dataPacketMap) {
+        this(dataPacketMap, Collections.<String>emptyList(), true, poolSizeDefault);
+    }
+
+    /**
+     * @param poolSize: The maximum number of released objects to keep for each
+     *            type.
+     */
+    public PooledDataPacketStreamReader(Map<String, DataPacket> dataPacketMap,
+            List<String> registeredClassNames, boolean buffered, int poolSize) {
+        super(dataPacketMap, registeredClassNames, buffered);
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("The pool size must be positive");
+        }
+        this.poolSize = poolSize;
+    }
+
+    @Override
+    public DataInputStream preLoop(InputStream inputStream) throws IOException {
+        Arrays.fill(poolsById, null);
+        return super.preLoop(inputStream);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    Object decode(int id, DataInputStream stream) throws IOException {
+        DataPacket prototype = prototype(id);
+        if (!(prototype instanceof ReusableDataPacket)) {
+            return prototype.read(stream);
+        }
+        ReusableDataPacket reusable = (ReusableDataPacket) prototype;
+        BlockingQueue<Object> pool = pool(id, reusable);
+        Object target = pool.poll();
+        if (target == null) {
+            target = reusable.create();
+        }
+        try {
+            reusable.readInto(stream, target);
+        } catch (IOException e) {
+            pool.offer(target);
+            throw e;
+        }
+        return target;
+    }
+
+    @SuppressWarnings("unchecked")
+    private BlockingQueue<Object> pool(int id, ReusableDataPacket reusable) {
+        if (id >= poolsById.length) {
+            poolsById = Arrays.copyOf(poolsById, Math.max(id + 1, 2 * poolsById.length));
+        }
+        BlockingQueue<Object> pool = poolsById[id];
+        if (pool == null) {
+            Object sample = reusable.create();
+            pool = poolsByClass.computeIfAbsent(sample.getClass(),
+                    type -> new ArrayBlockingQueue<>(poolSize));
+            pool.offer(sample);
+            poolsById[id] = pool;
+        }
+        return pool;
+    }
+
+    /**
+     * Hand an object that was returned by {@link #readOne(DataInputStream)}
+     * back to its pool. The caller must not touch the object afterwards. This
+     * may be called from any {@link Thread}. Objects which do not belong to a
+     * pool are ignored.
+     */
+    public void release(Object obj) {
+        if (obj != null) {
+            BlockingQueue<Object> pool = poolsByClass.get(obj.getClass());
+            if (pool != null) {
+                pool.offer(obj);
+            }
+        }
+    }
+}
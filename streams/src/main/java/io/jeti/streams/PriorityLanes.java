@@ -0,0 +1,417 @@
+package io.jeti.streams;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ * A {@link BlockingQueue} made up of several lanes, so that a
+ * {@link StreamWriterManager} taking objects from it can let urgent objects
+ * (heartbeats, commands) overtake bulk traffic, instead of waiting behind
+ * everything that was queued before them:
+ * </p>
+ * <pre>
+ * PriorityLanes&lt;DataPacket&gt; lanes = PriorityLanes.strict(2, 65536);
+ * StreamWriterManager.start(out, writer, lanes, FlushPolicy.whenIdle(256, 65536));
+ * lanes.lane(0).put(command);
+ * lanes.lane(1).put(sample);
+ * </pre>
+ * <p>
+ * With {@link #strict(int, int)} scheduling, an object is only taken from a
+ * lane when all of the lanes before it are empty. With
+ * {@link #weighted(int, int...)} scheduling, every non-empty lane gets its
+ * share of the objects in proportion to its weight (smooth weighted
+ * round-robin), so that a busy high priority lane cannot starve the others.
+ * Either way, an object added to a higher priority lane is the next one that
+ * the {@link StreamWriterManager} takes, so it goes out with the current batch.
+ * Use a {@link StreamWriterManager.FlushPolicy} which does not hold batches
+ * back for long, such as {@link StreamWriterManager.FlushPolicy#whenIdle(int, int)},
+ * to keep the latency of the urgent lanes low.
+ * </p>
+ * <p>
+ * Each {@link Lane} reports its {@link Lane#depth()}, and records how long its
+ * objects waited in a {@link Histogram}. The methods of the
+ * {@link BlockingQueue} interface which add objects add them to the last,
+ * lowest priority, lane. Its {@link #iterator()} returns a snapshot, which
+ * does not support removal.
+ * </p>
+ */
+public class PriorityLanes<O> extends AbstractQueue<O> implements BlockingQueue<O> {
+
+    /**
+     * An object, together with the time at which it was added.
+     */
+    private static class Entry<O> {
+
+        private final O    obj;
+        private final long added;
+
+        private Entry(O obj, long added) {
+            this.obj = obj;
+            this.added = added;
+        }
+    }
+
+    /**
+     * One of the lanes of a {@link PriorityLanes} queue, which objects are
+     * added to.
+     */
+    public class Lane {
+
+        private final int                  index;
+        private final int                  weight;
+        private final int                  capacity;
+        private final ArrayDeque<Entry<O>> entries = new ArrayDeque<>();
+        private final Condition            notFull = lock.newCondition();
+        private final Histogram            latency = new Histogram();
+        private long                       current;
+
+        private Lane(int index, int weight, int capacity) {
+            this.index = index;
+            this.weight = weight;
+            this.capacity = capacity;
+        }
+
+        /**
+         * Add the object if there is room in this lane, and return whether it
+         * was added.
+         */
+        public boolean offer(O obj) {
+            if (obj == null) {
+                throw new NullPointerException("The object cannot be null");
+            }
+            lock.lock();
+            try {
+                if (entries.size() == capacity) {
+                    return false;
+                }
+                enqueue(obj);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Add the object, waiting up to the timeout for room in this lane.
+         */
+        public boolean offer(O obj, long timeout, TimeUnit unit) throws InterruptedException {
+            if (obj == null) {
+                throw new NullPointerException("The object cannot be null");
+            }
+            long nanos = unit.toNanos(timeout);
+            lock.lockInterruptibly();
+            try {
+                while (entries.size() == capacity) {
+                    if (nanos <= 0) {
+                        return false;
+                    }
+                    nanos = notFull.awaitNanos(nanos);
+                }
+                enqueue(obj);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Add the object, waiting for room in this lane if necessary.
+         */
+        public void put(O obj) throws InterruptedException {
+            if (obj == null) {
+                throw new NullPointerException("The object cannot be null");
+            }
+            lock.lockInterruptibly();
+            try {
+                while (entries.size() == capacity) {
+                    notFull.await();
+                }
+                enqueue(obj);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return The position of this lane, where 0 is the highest priority.
+         */
+        public int index() {
+            return index;
+        }
+
+        /**
+         * @return The number of objects waiting in this lane.
+         */
+        public int depth() {
+            lock.lock();
+            try {
+                return entries.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return The number of objects that can be added to this lane before
+         *         it is full.
+         */
+        public int remainingCapacity() {
+            lock.lock();
+            try {
+                return capacity - entries.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return The time, in nanoseconds, that the objects taken from this
+         *         lane spent waiting in it.
+         */
+        public Histogram latency() {
+            return latency;
+        }
+
+        private void enqueue(O obj) {
+            entries.addLast(new Entry<>(obj, System.nanoTime()));
+            count++;
+            notEmpty.signal();
+        }
+
+        private O dequeue() {
+            Entry<O> entry = entries.pollFirst();
+            count--;
+            notFull.signal();
+            latency.record(System.nanoTime() - entry.added);
+            return entry.obj;
+        }
+    }
+
+    private final ReentrantLock lock     = new ReentrantLock();
+    private final Condition     notEmpty = lock.newCondition();
+    private final List<Lane>    lanes    = new ArrayList<>();
+    private final boolean       weighted;
+    private int                 count;
+
+    private PriorityLanes(int[] weights, int capacity, boolean weighted) {
+        if (weights.length < 1) {
+            throw new IllegalArgumentException("There must be at least one lane");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be positive");
+        }
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] < 1) {
+                throw new IllegalArgumentException("The weights must be positive");
+            }
+            lanes.add(new Lane(i, weights[i], capacity));
+        }
+        this.weighted = weighted;
+    }
+
+    /**
+     * Create a {@link PriorityLanes} queue where lane 0 always goes first,
+     * then lane 1, and so on.
+     *
+     * @param capacity: The maximum number of objects in each lane.
+     */
+    public static <O> PriorityLanes<O> strict(int lanes, int capacity) {
+        int[] weights = new int[lanes];
+        Arrays.fill(weights, 1);
+        return new PriorityLanes<>(weights, capacity, false);
+    }
+
+    /**
+     * Create a {@link PriorityLanes} queue where each non-empty lane gets a
+     * share of the objects taken in proportion to its weight.
+     *
+     * @param capacity: The maximum number of objects in each lane.
+     * @param weights: The weight of each lane.
+     */
+    public static <O> PriorityLanes<O> weighted(int capacity, int... weights) {
+        return new PriorityLanes<>(weights.clone(), capacity, true);
+    }
+
+    public Lane lane(int index) {
+        return lanes.get(index);
+    }
+
+    public int lanes() {
+        return lanes.size();
+    }
+
+    /**
+     * Choose the lane that the next object should be taken from, or return
+     * null if all of them are empty.
+     */
+    private Lane select(boolean take) {
+        if (count == 0) {
+            return null;
+        }
+        if (!weighted) {
+            for (Lane lane : lanes) {
+                if (!lane.entries.isEmpty()) {
+                    return lane;
+                }
+            }
+            return null;
+        }
+        Lane selected = null;
+        long total = 0;
+        for (Lane lane : lanes) {
+            if (!lane.entries.isEmpty()) {
+                total += lane.weight;
+                if (selected == null || lane.current + lane.weight > selected.current
+                        + selected.weight) {
+                    selected = lane;
+                }
+            }
+        }
+        if (take) {
+            for (Lane lane : lanes) {
+                if (!lane.entries.isEmpty()) {
+                    lane.current += lane.weight;
+                }
+            }
+            selected.current -= total;
+        }
+        return selected;
+    }
+
+    @Override
+    public boolean offer(O obj) {
+        return lanes.get(lanes.size() - 1).offer(obj);
+    }
+
+    @Override
+    public boolean offer(O obj, long timeout, TimeUnit unit) throws InterruptedException {
+        return lanes.get(lanes.size() - 1).offer(obj, timeout, unit);
+    }
+
+    @Override
+    public void put(O obj) throws InterruptedException {
+        lanes.get(lanes.size() - 1).put(obj);
+    }
+
+    @Override
+    public O poll() {
+        lock.lock();
+        try {
+            Lane lane = select(true);
+            return lane == null ? null : lane.dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public O poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return select(true).dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public O take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                notEmpty.await();
+            }
+            return select(true).dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public O peek() {
+        lock.lock();
+        try {
+            Lane lane = select(false);
+            return lane == null ? null : lane.entries.peekFirst().obj;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The free space in the lowest priority lane, which is the lane
+     *         that {@link #offer(Object)} and {@link #put(Object)} add to.
+     */
+    @Override
+    public int remainingCapacity() {
+        return lanes.get(lanes.size() - 1).remainingCapacity();
+    }
+
+    @Override
+    public int drainTo(Collection<? super O> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super O> c, int maxElements) {
+        if (c == this) {
+            throw new IllegalArgumentException("Cannot drain a queue into itself");
+        }
+        lock.lock();
+        try {
+            int drained = 0;
+            Lane lane;
+            while (drained < maxElements && (lane = select(true)) != null) {
+                c.add(lane.dequeue());
+                drained++;
+            }
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Iterator<O> iterator() {
+        lock.lock();
+        try {
+            List<O> snapshot = new ArrayList<>(count);
+            for (Lane lane : lanes) {
+                for (Entry<O> entry : lane.entries) {
+                    snapshot.add(entry.obj);
+                }
+            }
+            return Collections.unmodifiableList(snapshot).iterator();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
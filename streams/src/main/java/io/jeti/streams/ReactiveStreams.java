@@ -0,0 +1,58 @@
+package io.jeti.streams;
+
+/**
+ * <p>
+ * The Reactive Streams interfaces, with exactly the same shape as
+ * {@code java.util.concurrent.Flow} from Java 9 and
+ * {@code org.reactivestreams}, so that this library can keep targeting Java
+ * 8. Adapting to either of them only takes a wrapper which forwards each
+ * method.
+ * </p>
+ * <p>
+ * A {@link Publisher} only ever sends a {@link Subscriber} as many items as
+ * the {@link Subscriber} has asked for with {@link Subscription#request(long)},
+ * which is how a slow consumer slows down the producer. See
+ * {@link StreamPublisher} and {@link StreamSubscriber}.
+ * </p>
+ */
+public final class ReactiveStreams {
+
+    private ReactiveStreams() {
+    }
+
+    public interface Publisher<T> {
+
+        /**
+         * Add the {@link Subscriber}, which will be given a
+         * {@link Subscription} through {@link Subscriber#onSubscribe}.
+         */
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    public interface Subscriber<T> {
+
+        void onSubscribe(Subscription subscription);
+
+        void onNext(T item);
+
+        void onError(Throwable throwable);
+
+        void onComplete();
+    }
+
+    public interface Subscription {
+
+        /**
+         * Allow the {@link Publisher} to send {@code n} more items.
+         */
+        void request(long n);
+
+        /**
+         * Ask the {@link Publisher} to stop sending items.
+         */
+        void cancel();
+    }
+
+    public interface Processor<T, R> extends Subscriber<T>, Publisher<R> {
+    }
+}
@@ -0,0 +1,34 @@
+package io.jeti.streams;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * A {@link DataPacket} whose instances are mutable, so that they can be read
+ * into again and again instead of allocating a new instance for every packet.
+ * The {@link PooledDataPacketStreamReader} uses this to recycle instances once
+ * the {@link Sink} has released them.
+ */
+public interface ReusableDataPacket<Type> extends DataPacket<Type> {
+
+    /**
+     * Create a new, empty instance, which can be passed to
+     * {@link #readInto(DataInputStream, Object)}.
+     */
+    Type create();
+
+    /**
+     * Overwrite the fields of the target with values read from a
+     * {@link DataInputStream}. You should assume that the input stream was
+     * generated by the {@link #write(java.io.DataOutputStream)} method, and
+     * you should not keep any state from the previous contents of the target.
+     */
+    void readInto(DataInputStream stream, Type target) throws IOException;
+
+    @Override
+    default Type read(DataInputStream stream) throws IOException {
+        Type target = create();
+        readInto(stream, target);
+        return target;
+    }
+}
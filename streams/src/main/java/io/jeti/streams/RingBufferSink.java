@@ -0,0 +1,224 @@
+package io.jeti.streams;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>
+ * A {@link RingBufferSink} is like a {@link Sinks.SingleThreadedSink}, except
+ * that the objects are queued in a preallocated, bounded ring buffer instead
+ * of an unbounded {@link java.util.concurrent.LinkedBlockingQueue}. Queuing
+ * an object therefore neither allocates nor takes a lock, and the memory used
+ * by the queue is capped.
+ * </p>
+ * <p>
+ * Every slot in the ring carries a sequence number which says whether it is
+ * ready to be written or ready to be read, and producers and the consumer
+ * claim slots by advancing their own sequence counters. With
+ * {@link Producers#SINGLE}, the producer side skips the compare-and-set, but
+ * then {@link #process(Object)} must only ever be called from one
+ * {@link Thread} at a time. The {@link WaitStrategy} decides how the consumer
+ * (and blocked producers) wait, and the {@link OverflowPolicy} decides what
+ * happens when the ring is full.
+ * </p>
+ */
+public class RingBufferSink<T> implements Sink<T> {
+
+    /**
+     * Whether {@link #process(Object)} is called from one or many
+     * {@link Thread}s.
+     */
+    public enum Producers {
+        SINGLE, MULTI
+    }
+
+    /**
+     * How to wait for the ring buffer to become non-empty (on the consumer
+     * side) or non-full (on the producer side, with
+     * {@link OverflowPolicy#BLOCK}).
+     */
+    public enum WaitStrategy {
+
+        /** Spin in a tight loop. Lowest latency, but burns a core. */
+        BUSY_SPIN {
+            @Override
+            void idle() {
+            }
+        },
+
+        /** Yield the {@link Thread} between checks. */
+        YIELD {
+            @Override
+            void idle() {
+                Thread.yield();
+            }
+        },
+
+        /** Park the {@link Thread} for a short time between checks. */
+        PARK {
+            @Override
+            void idle() {
+                LockSupport.parkNanos(parkNanos);
+            }
+        };
+
+        private static final long parkNanos = 50_000;
+
+        abstract void idle();
+    }
+
+    /**
+     * What {@link #process(Object)} does when the ring buffer is full.
+     */
+    public enum OverflowPolicy {
+
+        /** Wait until there is room. */
+        BLOCK,
+
+        /** Discard the object being added. */
+        DROP_NEWEST,
+
+        /** Discard the oldest queued object to make room. */
+        DROP_OLDEST,
+
+        /** Throw an {@link IllegalStateException}. */
+        FAIL
+    }
+
+    private final Object[]        buffer;
+    private final AtomicLongArray sequences;
+    private final int             mask;
+    private final AtomicLong      head    = new AtomicLong();
+    private final AtomicLong      tail    = new AtomicLong();
+    private final Producers       producers;
+    private final WaitStrategy    waitStrategy;
+    private final OverflowPolicy  overflowPolicy;
+    private final LongAdder       dropped = new LongAdder();
+    private final ExecutorService executorService;
+
+    RingBufferSink(Sink<T> sink, int capacity, Producers producers, WaitStrategy waitStrategy,
+            OverflowPolicy overflowPolicy) {
+        if (sink == null) {
+            throw new NullPointerException("The sink cannot be null");
+        }
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("The capacity must be a power of 2, and at least 2");
+        }
+        if (producers == null || waitStrategy == null || overflowPolicy == null) {
+            throw new NullPointerException(
+                    "The producers, wait strategy, and overflow policy cannot be null");
+        }
+        this.buffer = new Object[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = capacity - 1;
+        this.producers = producers;
+        this.waitStrategy = waitStrategy;
+        this.overflowPolicy = overflowPolicy;
+        this.executorService = Executors.newSingleThreadExecutor();
+        this.executorService.execute(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    T obj = poll();
+                    if (obj != null) {
+                        sink.process(obj);
+                    } else {
+                        waitStrategy.idle();
+                    }
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    public void stop() {
+        executorService.shutdownNow();
+    }
+
+    /**
+     * @return The number of objects which have been discarded because the
+     *         ring buffer was full.
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return The number of objects currently queued.
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, buffer.length));
+    }
+
+    @Override
+    public void process(T obj) {
+        if (obj == null) {
+            throw new NullPointerException("Cannot queue a null object");
+        }
+        while (!offer(obj)) {
+            switch (overflowPolicy) {
+                case BLOCK:
+                    waitStrategy.idle();
+                    break;
+                case DROP_NEWEST:
+                    dropped.increment();
+                    return;
+                case DROP_OLDEST:
+                    if (poll() != null) {
+                        dropped.increment();
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("The ring buffer is full");
+            }
+        }
+    }
+
+    private boolean offer(T obj) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (producers == Producers.SINGLE) {
+                    tail.lazySet(position + 1);
+                } else if (!tail.compareAndSet(position, position + 1)) {
+                    continue;
+                }
+                buffer[index] = obj;
+                sequences.lazySet(index, position + 1);
+                return true;
+            } else if (difference < 0) {
+                return false;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T poll() {
+        while (true) {
+            long position = head.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (!head.compareAndSet(position, position + 1)) {
+                    continue;
+                }
+                T obj = (T) buffer[index];
+                buffer[index] = null;
+                sequences.lazySet(index, position + buffer.length);
+                return obj;
+            } else if (difference < 0) {
+                return null;
+            }
+        }
+    }
+}
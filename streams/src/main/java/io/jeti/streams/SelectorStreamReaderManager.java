@@ -0,0 +1,463 @@
+package io.jeti.streams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * <p>
+ * A {@link SelectorStreamReaderManager} reads from many {@link SocketChannel}s
+ * using a small, fixed number of I/O threads, instead of dedicating one
+ * {@link Thread} to every {@link InputStream} like the
+ * {@link StreamReaderManager} does. Each I/O thread owns a {@link Selector}.
+ * Whenever one of its channels is readable, the available bytes are appended
+ * to a per-connection {@link ByteBuffer}, and the connection's
+ * {@link StreamReader} is used to decode as many complete objects from that
+ * buffer as possible. Each decoded object is passed to the connection's
+ * {@link Sink}, on the I/O thread.
+ * </p>
+ * <p>
+ * If the length of each object can be told from its first few bytes, a
+ * {@link Framing} can be given to the manager, which then waits until the
+ * whole object has arrived before decoding it, so every object is decoded
+ * exactly once. This is done automatically for the {@link Frame}s read by a
+ * {@link FramedDataPacketStreamReader}, which must be unbuffered.
+ * </p>
+ * <p>
+ * Without a {@link Framing}, the {@link StreamReader} only ever sees the bytes
+ * that have arrived so far, so a {@link StreamReader#readOne(Object)} call that
+ * runs out of bytes is abandoned and retried from the start of the object once
+ * more bytes arrive. That costs time proportional to the square of the size of
+ * an object which arrives in many pieces, and {@link DataPacket#read} may be
+ * called on a truncated packet. Either way, the {@link StreamReader} must not
+ * read ahead, or keep state from an abandoned call. For example, use
+ * {@code new DataPacketStreamReader(map, false)}, and not the buffered
+ * default. The {@link SerializableStreamReader} is not supported.
+ * </p>
+ * <p>
+ * A connection's buffer grows to hold the largest object which has not fully
+ * arrived, up to a limit given to {@link #start(int, int)}. A connection whose
+ * next object does not fit is closed.
+ * </p>
+ */
+public class SelectorStreamReaderManager {
+
+    private static final int    initialBufferSize    = 8192;
+    private static final int    maxBufferSizeDefault = 64 * 1024 * 1024;
+
+    /**
+     * Tells how many bytes the next object takes up in the stream.
+     */
+    public interface Framing {
+
+        /**
+         * @param buffer: The bytes which have arrived so far, from the
+         *            position of the buffer to its limit, starting with the
+         *            next object. The position must not be changed.
+         * @return The number of bytes in the next object, or -1 if more bytes
+         *         are needed to tell. If this cannot be told at all, for
+         *         example because the bytes are corrupt, return the number of
+         *         bytes which have arrived, so that decoding is attempted
+         *         anyway.
+         */
+        int length(ByteBuffer buffer);
+    }
+
+    /**
+     * @return A {@link Framing} for the {@link Frame}s written by a
+     *         {@link FramedDataPacketStreamWriter}, which must only be used
+     *         for one connection. Frames longer than the default of a
+     *         {@link FrameReader} are treated as corrupt.
+     */
+    public static Framing frames() {
+        return frames(FrameReader.maxLengthDefault);
+    }
+
+    /**
+     * @param maxLength: The largest body length that will be accepted, which
+     *            should match the {@link FrameReader#maxLength()} of the
+     *            reader. Longer lengths are treated as corrupt.
+     * @return A {@link Framing} for the {@link Frame}s written by a
+     *         {@link FramedDataPacketStreamWriter}, which must only be used
+     *         for one connection.
+     */
+    public static Framing frames(int maxLength) {
+        if (maxLength < 1) {
+            throw new IllegalArgumentException("The maximum length must be positive");
+        }
+        CRC32 crc = new CRC32();
+        return buffer -> {
+            int start = buffer.position();
+            if (buffer.remaining() < 9) {
+                return -1;
+            }
+            int flags = buffer.get(start + 2) & 0xFF;
+            int length = buffer.getInt(start + 3);
+            int headerChecksum = buffer.getShort(start + 7) & 0xFFFF;
+            if (buffer.getShort(start) != (short) Frame.MAGIC || length < 2
+                    || length > maxLength
+                    || headerChecksum != Frame.headerChecksum(crc, flags, length)) {
+                /* Let the FrameReader skip ahead to the next frame. */
+                return buffer.remaining();
+            }
+            int checksumLength = (flags & Frame.FLAG_CHECKSUM) != 0 ? 4 : 0;
+            return 9 + length + checksumLength;
+        };
+    }
+
+    private final IoThread[]    ioThreads;
+    private final int           maxBufferSize;
+    private final AtomicInteger next                 = new AtomicInteger();
+
+    private SelectorStreamReaderManager(int threads, int maxBufferSize) throws IOException {
+        this.maxBufferSize = maxBufferSize;
+        this.ioThreads = new IoThread[threads];
+        for (int i = 0; i < threads; i++) {
+            ioThreads[i] = new IoThread(Selector.open());
+        }
+    }
+
+    /**
+     * Create, start, and return a {@link SelectorStreamReaderManager} with the
+     * specified number of I/O threads.
+     */
+    public static SelectorStreamReaderManager start(int threads) throws IOException {
+        return start(threads, maxBufferSizeDefault);
+    }
+
+    /**
+     * Create, start, and return a {@link SelectorStreamReaderManager} with the
+     * specified number of I/O threads.
+     *
+     * @param maxBufferSize: The largest that a connection's buffer may grow,
+     *            in bytes, so this must be larger than any object that the
+     *            connections will read.
+     */
+    public static SelectorStreamReaderManager start(int threads, int maxBufferSize)
+            throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of threads must be positive");
+        }
+        if (maxBufferSize < initialBufferSize) {
+            throw new IllegalArgumentException(
+                    "The maximum buffer size must be at least " + initialBufferSize);
+        }
+        SelectorStreamReaderManager manager = new SelectorStreamReaderManager(threads,
+                maxBufferSize);
+        for (IoThread ioThread : manager.ioThreads) {
+            ioThread.start();
+        }
+        return manager;
+    }
+
+    /**
+     * Start reading from the specified {@link SocketChannel}, passing every
+     * object that the {@link StreamReader} decodes to the {@link Sink}. The
+     * channel is read until the remote end closes it, an {@link Exception}
+     * occurs, or this manager is stopped. A
+     * {@link FramedDataPacketStreamReader} is read with {@link #frames(int)}.
+     */
+    public <S, O> void register(SocketChannel channel, StreamReader<S, O> reader, Sink<O> sink)
+            throws IOException {
+        Framing framing = null;
+        if (reader instanceof FramedDataPacketStreamReader) {
+            framing = frames(((FramedDataPacketStreamReader) reader).frameReader().maxLength());
+        }
+        register(channel, reader, framing, sink);
+    }
+
+    /**
+     * Start reading from the specified {@link SocketChannel} (see
+     * {@link #register(SocketChannel, StreamReader, Sink)}), only decoding
+     * each object once the {@link Framing} says that all of it has arrived.
+     *
+     * @param framing: Can be null, to decode without one.
+     */
+    public <S, O> void register(SocketChannel channel, StreamReader<S, O> reader,
+            Framing framing, Sink<O> sink) throws IOException {
+        if (reader == null) {
+            throw new NullPointerException("The reader cannot be null");
+        }
+        if (reader instanceof FramedDataPacketStreamReader
+                && ((FramedDataPacketStreamReader) reader).buffered()) {
+            throw new IllegalArgumentException(
+                    "A FramedDataPacketStreamReader must be unbuffered to be read by a selector");
+        }
+        if (sink == null) {
+            throw new NullPointerException("The sink cannot be null");
+        }
+        channel.configureBlocking(false);
+        IoThread ioThread = ioThreads[Math.floorMod(next.getAndIncrement(), ioThreads.length)];
+        ioThread.pending.add(new Connection<>(channel, reader, framing, sink, maxBufferSize));
+        ioThread.selector.wakeup();
+    }
+
+    /**
+     * Start a {@link Thread} which accepts connections from the specified
+     * {@link ServerSocketChannel} and registers each of them with a new
+     * {@link StreamReader} from the {@link Supplier}. The {@link Thread} runs
+     * until the {@link ServerSocketChannel} is closed. Unless the
+     * {@link ServerSocketChannel} is registered with a {@link Selector}, it is
+     * put into blocking mode.
+     */
+    public <S, O> Thread accept(ServerSocketChannel server,
+            Supplier<? extends StreamReader<S, O>> readers, Sink<O> sink) {
+        Thread thread = new Thread(() -> {
+            try {
+                synchronized (server.blockingLock()) {
+                    if (!server.isRegistered()) {
+                        server.configureBlocking(true);
+                    }
+                }
+                while (true) {
+                    SocketChannel channel = server.accept();
+                    if (channel == null) {
+                        /* A non-blocking server had nothing to accept. */
+                        Thread.yield();
+                        continue;
+                    }
+                    register(channel, readers.get(), sink);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Stop all of the I/O threads, and close all of the registered channels.
+     */
+    public void stop() {
+        for (IoThread ioThread : ioThreads) {
+            ioThread.interrupt();
+            ioThread.selector.wakeup();
+        }
+    }
+
+    private static class IoThread extends Thread {
+
+        private final Selector                  selector;
+        private final Queue<Connection<?, ?>>   pending = new ConcurrentLinkedQueue<>();
+
+        private IoThread(Selector selector) {
+            this.selector = selector;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!isInterrupted()) {
+                    Connection<?, ?> connection;
+                    while ((connection = pending.poll()) != null) {
+                        connection.open(selector);
+                    }
+                    selector.select();
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection<?, ?> ready = (Connection<?, ?>) key.attachment();
+                        if (key.isValid() && key.isReadable()) {
+                            ready.read();
+                        }
+                    }
+                }
+            } catch (ClosedSelectorException e) {
+                // The manager was stopped.
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                Connection<?, ?> connection;
+                while ((connection = pending.poll()) != null) {
+                    connection.close();
+                }
+                try {
+                    for (SelectionKey key : selector.keys()) {
+                        ((Connection<?, ?>) key.attachment()).close();
+                    }
+                    selector.close();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Thrown by the {@link BufferInputStream} when a {@link StreamReader} asks
+     * for more bytes than have arrived so far.
+     */
+    static class UnderflowException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private UnderflowException() {
+            super("Not enough bytes buffered", null);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    private static final UnderflowException UNDERFLOW = new UnderflowException();
+
+    /**
+     * An {@link InputStream} view of the readable bytes in a connection's
+     * {@link ByteBuffer}.
+     */
+    private static class BufferInputStream extends InputStream {
+
+        private ByteBuffer buffer;
+
+        @Override
+        public int read() throws IOException {
+            if (!buffer.hasRemaining()) {
+                throw UNDERFLOW;
+            }
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                throw UNDERFLOW;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.min(n, buffer.remaining());
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    private static class Connection<S, O> {
+
+        private final SocketChannel      channel;
+        private final StreamReader<S, O> reader;
+        private final Framing            framing;
+        private final Sink<O>            sink;
+        private final int                maxBufferSize;
+        private final BufferInputStream  inputStream = new BufferInputStream();
+        private ByteBuffer               buffer      = ByteBuffer.allocate(initialBufferSize);
+        private S                        modifiedStream;
+        private boolean                  closed;
+
+        private Connection(SocketChannel channel, StreamReader<S, O> reader, Framing framing,
+                Sink<O> sink, int maxBufferSize) {
+            this.channel = channel;
+            this.reader = reader;
+            this.framing = framing;
+            this.sink = sink;
+            this.maxBufferSize = maxBufferSize;
+            this.inputStream.buffer = buffer;
+        }
+
+        /**
+         * Move the buffered bytes into a new buffer of the specified size.
+         */
+        private void resize(int size) {
+            ByteBuffer resized = ByteBuffer.allocate(size);
+            buffer.flip();
+            resized.put(buffer);
+            buffer = resized;
+            inputStream.buffer = buffer;
+        }
+
+        private void open(Selector selector) {
+            try {
+                buffer.flip();
+                modifiedStream = reader.preLoop(inputStream);
+                buffer.compact();
+                channel.register(selector, SelectionKey.OP_READ, this);
+            } catch (Exception e) {
+                e.printStackTrace();
+                close();
+            }
+        }
+
+        private void read() {
+            try {
+                if (!buffer.hasRemaining()) {
+                    if (buffer.capacity() >= maxBufferSize) {
+                        throw new IOException("An object does not fit in " + maxBufferSize
+                                + " bytes");
+                    }
+                    resize((int) Math.min(2L * buffer.capacity(), maxBufferSize));
+                }
+                int n = channel.read(buffer);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    if (framing != null) {
+                        int length = framing.length(buffer);
+                        if (length < 0 || length > buffer.remaining()) {
+                            break;
+                        }
+                    }
+                    int start = buffer.position();
+                    O obj;
+                    try {
+                        obj = reader.readOne(modifiedStream);
+                    } catch (UnderflowException e) {
+                        buffer.position(start);
+                        break;
+                    }
+                    sink.process(obj);
+                }
+                buffer.compact();
+                if (buffer.capacity() > initialBufferSize
+                        && buffer.position() <= initialBufferSize / 2) {
+                    /* The large object has been read, so give back its space. */
+                    resize(initialBufferSize);
+                }
+                if (n < 0) {
+                    close();
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+                close();
+            }
+        }
+
+        private void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            reader.preClose(inputStream, modifiedStream);
+            try {
+                channel.close();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            reader.closed();
+        }
+    }
+}
@@ -9,6 +9,7 @@ import java.io.Serializable;
 public class SerializableStreamReader implements StreamReader<ObjectInputStream, Serializable> {
 
     private final boolean buffered;
+    private final boolean unshared;
     private static final boolean bufferedDefault = true;
 
     public SerializableStreamReader() {
@@ -16,7 +17,18 @@ public class SerializableStreamReader implements StreamReader<ObjectInputStream,
     }
 
     public SerializableStreamReader(boolean buffered) {
+        this(buffered, false);
+    }
+
+    /**
+     * @param unshared: If true, objects are read with
+     *            {@link ObjectInputStream#readUnshared()}, so that the stream
+     *            does not retain them. Use this together with
+     *            {@link SerializableStreamWriter.ResetPolicy#unshared()}.
+     */
+    public SerializableStreamReader(boolean buffered, boolean unshared) {
         this.buffered = buffered;
+        this.unshared = unshared;
     }
 
     @Override
@@ -31,6 +43,6 @@ public class SerializableStreamReader implements StreamReader<ObjectInputStream,
 
     @Override
     public Serializable readOne(ObjectInputStream stream) throws IOException, ClassNotFoundException {
-        return (Serializable) stream.readObject();
+        return (Serializable) (unshared ? stream.readUnshared() : stream.readObject());
     }
 }
\ No newline at end of file
@@ -10,6 +10,7 @@ public class SerializableStreamReaderSink implements StreamReader<ObjectInputStr
 
     private final Sink sink;
     private final boolean        buffered;
+    private final boolean        unshared;
     private static final boolean bufferedDefault = true;
 
     public SerializableStreamReaderSink(Sink sink) {
@@ -17,11 +18,22 @@ public class SerializableStreamReaderSink implements StreamReader<ObjectInputStr
     }
 
     public SerializableStreamReaderSink(Sink sink, boolean buffered) {
+        this(sink, buffered, false);
+    }
+
+    /**
+     * @param unshared: If true, objects are read with
+     *            {@link ObjectInputStream#readUnshared()}, so that the stream
+     *            does not retain them. Use this together with
+     *            {@link SerializableStreamWriter.ResetPolicy#unshared()}.
+     */
+    public SerializableStreamReaderSink(Sink sink, boolean buffered, boolean unshared) {
         if (sink == null) {
             throw new NullPointerException("The sink cannot be null");
         }
         this.sink = sink;
         this.buffered = buffered;
+        this.unshared = unshared;
     }
 
     @Override
@@ -36,7 +48,8 @@ public class SerializableStreamReaderSink implements StreamReader<ObjectInputStr
     @Override
     public Serializable readOne(ObjectInputStream stream)
             throws IOException, ClassNotFoundException {
-        Serializable obj = (Serializable) stream.readObject();
+        Serializable obj = (Serializable) (unshared ? stream.readUnshared()
+                : stream.readObject());
         sink.process(obj);
         return obj;
     }
@@ -1,20 +1,181 @@
 package io.jeti.streams;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Writes {@link Serializable} objects with an {@link ObjectOutputStream}.
+ * <p>
+ * An {@link ObjectOutputStream} remembers every object that it has written
+ * (so that it can write back-references to it instead of writing it again),
+ * and the {@link java.io.ObjectInputStream} on the other side does the same.
+ * On a long-lived stream, these tables grow forever, and an object which is
+ * modified after it was written is silently sent as a back-reference to its
+ * old state. A {@link ResetPolicy} bounds this by periodically calling
+ * {@link ObjectOutputStream#reset()}, which clears both tables, or by writing
+ * every object with {@link ObjectOutputStream#writeUnshared(Object)}.
+ * </p>
+ */
 public class SerializableStreamWriter implements StreamWriter<ObjectOutputStream, Serializable> {
 
+    /**
+     * Decides when a {@link SerializableStreamWriter} resets its
+     * {@link ObjectOutputStream}. Resetting more often keeps the memory on both
+     * ends bounded, but means that repeated objects (and class descriptions)
+     * are written in full again after every reset.
+     */
+    public static class ResetPolicy {
+
+        private final long    maxObjects;
+        private final long    maxBytes;
+        private final long    maxNanos;
+        private final boolean unshared;
+
+        private ResetPolicy(long maxObjects, long maxBytes, long maxNanos, boolean unshared) {
+            this.maxObjects = maxObjects;
+            this.maxBytes = maxBytes;
+            this.maxNanos = maxNanos;
+            this.unshared = unshared;
+        }
+
+        /**
+         * Never reset. This is the default, and retains every written object.
+         */
+        public static ResetPolicy never() {
+            return new ResetPolicy(Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, false);
+        }
+
+        /**
+         * Reset after every {@code objects} objects.
+         */
+        public static ResetPolicy everyObjects(long objects) {
+            if (objects < 1) {
+                throw new IllegalArgumentException("The number of objects must be positive");
+            }
+            return new ResetPolicy(objects, Long.MAX_VALUE, Long.MAX_VALUE, false);
+        }
+
+        /**
+         * Reset once at least {@code bytes} bytes have been written since the
+         * last reset.
+         */
+        public static ResetPolicy everyBytes(long bytes) {
+            if (bytes < 1) {
+                throw new IllegalArgumentException("The number of bytes must be positive");
+            }
+            return new ResetPolicy(Long.MAX_VALUE, bytes, Long.MAX_VALUE, false);
+        }
+
+        /**
+         * Reset before writing an object if at least {@code millis}
+         * milliseconds have passed since the last reset.
+         */
+        public static ResetPolicy everyMillis(long millis) {
+            if (millis < 1) {
+                throw new IllegalArgumentException("The number of milliseconds must be positive");
+            }
+            return new ResetPolicy(Long.MAX_VALUE, Long.MAX_VALUE,
+                    TimeUnit.MILLISECONDS.toNanos(millis), false);
+        }
+
+        /**
+         * Never reset, but write every object with
+         * {@link ObjectOutputStream#writeUnshared(Object)}, so that the written
+         * objects themselves are not retained. Objects that they refer to are
+         * still shared.
+         */
+        public static ResetPolicy unshared() {
+            return new ResetPolicy(Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, true);
+        }
+    }
+
+    /**
+     * Counts the bytes written to the underlying {@link OutputStream}.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    private final ResetPolicy    resetPolicy;
+    private CountingOutputStream countingStream;
+    private long                 objectsSinceReset;
+    private long                 bytesAtReset;
+    private long                 nanosAtReset;
+
+    public SerializableStreamWriter() {
+        this(ResetPolicy.never());
+    }
+
+    public SerializableStreamWriter(ResetPolicy resetPolicy) {
+        if (resetPolicy == null) {
+            throw new NullPointerException("The reset policy cannot be null");
+        }
+        this.resetPolicy = resetPolicy;
+    }
+
     @Override
     public ObjectOutputStream preLoop(OutputStream outputStream) throws IOException {
-        return new ObjectOutputStream(outputStream);
+        objectsSinceReset = 0;
+        bytesAtReset = 0;
+        nanosAtReset = System.nanoTime();
+        if (resetPolicy.maxBytes != Long.MAX_VALUE) {
+            countingStream = new CountingOutputStream(outputStream);
+            return new ObjectOutputStream(countingStream);
+        } else {
+            countingStream = null;
+            return new ObjectOutputStream(outputStream);
+        }
     }
 
     @Override
     public void writeOne(ObjectOutputStream stream, Serializable objectToWrite) throws IOException {
-        stream.writeObject(objectToWrite);
+        if (resetPolicy.maxNanos != Long.MAX_VALUE
+                && System.nanoTime() - nanosAtReset >= resetPolicy.maxNanos) {
+            reset(stream);
+        }
+        if (resetPolicy.unshared) {
+            stream.writeUnshared(objectToWrite);
+        } else {
+            stream.writeObject(objectToWrite);
+        }
+        if (++objectsSinceReset >= resetPolicy.maxObjects || (countingStream != null
+                && countingStream.count - bytesAtReset >= resetPolicy.maxBytes)) {
+            reset(stream);
+        }
+    }
 
+    private void reset(ObjectOutputStream stream) throws IOException {
+        stream.reset();
+        objectsSinceReset = 0;
+        nanosAtReset = System.nanoTime();
+        if (countingStream != null) {
+            bytesAtReset = countingStream.count;
+        }
+    }
+
+    @Override
+    public void flush(ObjectOutputStream stream) throws IOException {
+        stream.flush();
     }
 }
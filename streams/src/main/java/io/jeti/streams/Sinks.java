@@ -1,9 +1,18 @@
 package io.jeti.streams;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Function;
 
 /**
  * A {@link io.jeti.streams.Sink} is a generic consumer which defines the
@@ -42,7 +51,7 @@ public class Sinks {
         }
     }
 
-    public static <T> SingleThreadedSink newSingleThreadedSink(Sink<T> sink) {
+    public static <T> SingleThreadedSink<T> newSingleThreadedSink(Sink<T> sink) {
         return new SingleThreadedSink<>(sink);
     }
 
@@ -61,13 +70,53 @@ public class Sinks {
             executorService.shutdownNow();
         }
 
+        /**
+         * @return The number of objects waiting in the queue.
+         */
+        public int size() {
+            return queue.size();
+        }
+
         @Override
         public void process(T obj) {
             queue.add(obj);
         }
     }
 
-    public static <T> MultiThreadedSink newMultiThreadedSink(Sink<T> sink, int threads) {
+    /**
+     * Return a {@link RingBufferSink}, which processes objects on a single
+     * {@link Thread} like a {@link SingleThreadedSink}, but queues them in a
+     * preallocated ring buffer with the specified capacity (a power of 2).
+     */
+    public static <T> RingBufferSink<T> newRingBufferSink(Sink<T> sink, int capacity,
+            RingBufferSink.Producers producers, RingBufferSink.WaitStrategy waitStrategy,
+            RingBufferSink.OverflowPolicy overflowPolicy) {
+        return new RingBufferSink<>(sink, capacity, producers, waitStrategy, overflowPolicy);
+    }
+
+    /**
+     * Return an {@link ElasticSink}, which processes objects on between
+     * {@code minThreads} and {@code maxThreads} new {@link Thread}s, adding
+     * one whenever the queued objects would take more than 5 milliseconds to
+     * process, and retiring one after it has had nothing to do for a second.
+     */
+    public static <T> ElasticSink<T> newElasticSink(Sink<T> sink, int minThreads, int maxThreads) {
+        return newElasticSink(sink, minThreads, maxThreads, 5, 1000,
+                task -> new Thread(task).start());
+    }
+
+    /**
+     * Return an {@link ElasticSink} whose workers are run by the specified
+     * {@link Executor}, which must be able to run {@code maxThreads} of them at
+     * once.
+     */
+    public static <T> ElasticSink<T> newElasticSink(Sink<T> sink, int minThreads, int maxThreads,
+            long targetDelayMillis, long keepAliveMillis, Executor executor) {
+        return new ElasticSink<>(sink, minThreads, maxThreads, targetDelayMillis, keepAliveMillis,
+                executor);
+    }
+
+    public static <T> MultiThreadedSink<T> newMultiThreadedSink(Sink<T> sink, int threads) {
         return new MultiThreadedSink<>(sink, threads);
     }
 
@@ -88,9 +137,355 @@ public class Sinks {
             executorService.shutdownNow();
         }
 
+        /**
+         * @return The number of objects waiting in the queue.
+         */
+        public int size() {
+            return queue.size();
+        }
+
         @Override
         public void process(T obj) {
             queue.add(obj);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Return a {@link BatchingSink}, which passes objects to the specified
+     * {@link Sink} in lists of at most {@code maxBatchSize} objects. A batch is
+     * delivered as soon as it is full, or once {@code maxLingerMillis}
+     * milliseconds have passed since its first object arrived.
+     */
+    public static <T> BatchingSink<T> newBatchingSink(Sink<List<T>> sink, int maxBatchSize,
+            long maxLingerMillis) {
+        return new BatchingSink<>(sink, maxBatchSize, maxLingerMillis);
+    }
+
+    /**
+     * A {@link BatchingSink} queues objects like a {@link SingleThreadedSink},
+     * but its {@link Thread} drains them off of the queue in batches, and
+     * passes each batch to the downstream {@link Sink} as a new {@link List}.
+     * When the {@link BatchingSink} is stopped, everything that is still
+     * queued is delivered before the {@link Thread} exits.
+     */
+    public static class BatchingSink<T> implements Sink<T> {
+
+        /**
+         * Queued by {@link #stop()}, after the last object to deliver.
+         */
+        private static final Object         STOP = new Object();
+
+        private final BlockingQueue<Object> queue;
+        private final ExecutorService       executorService;
+
+        @SuppressWarnings("unchecked")
+        private BatchingSink(Sink<List<T>> sink, int maxBatchSize, long maxLingerMillis) {
+            if (sink == null) {
+                throw new NullPointerException("The sink cannot be null");
+            }
+            if (maxBatchSize < 1) {
+                throw new IllegalArgumentException("The maximum batch size must be positive");
+            }
+            if (maxLingerMillis < 0) {
+                throw new IllegalArgumentException("The maximum linger time cannot be negative");
+            }
+            long maxLingerNanos = TimeUnit.MILLISECONDS.toNanos(maxLingerMillis);
+            this.queue = new LinkedBlockingQueue<>();
+            this.executorService = Executors.newSingleThreadExecutor();
+            this.executorService.execute(() -> {
+                List<Object> drained = new ArrayList<>();
+                boolean stopped = false;
+                while (!stopped) {
+                    List<T> batch = new ArrayList<>();
+                    try {
+                        Object obj = queue.take();
+                        long deadline = System.nanoTime() + maxLingerNanos;
+                        while (obj != null) {
+                            drained.add(obj);
+                            /* Take everything else that is queued with one lock acquisition. */
+                            queue.drainTo(drained, maxBatchSize - batch.size() - 1);
+                            for (Object next : drained) {
+                                if (next == STOP) {
+                                    stopped = true;
+                                    break;
+                                }
+                                batch.add((T) next);
+                            }
+                            drained.clear();
+                            if (stopped || batch.size() == maxBatchSize) {
+                                break;
+                            }
+                            long remaining = deadline - System.nanoTime();
+                            obj = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS)
+                                    : null;
+                        }
+                    } catch (InterruptedException e) {
+                        /* Only the executor interrupts us, so stop after this batch. */
+                        stopped = true;
+                    }
+                    if (!batch.isEmpty()) {
+                        try {
+                            sink.process(batch);
+                        } catch (Exception e) {
+                            /* Keep going, so that the rest is still delivered. */
+                            e.printStackTrace();
+                        }
+                    }
+                }
+            });
+        }
+
+        /**
+         * Stop the {@link Thread}, after it has delivered all of the objects
+         * queued before this call.
+         */
+        public void stop() {
+            queue.add(STOP);
+            executorService.shutdown();
+        }
+
+        /**
+         * @return The number of objects waiting in the queue.
+         */
+        public int size() {
+            return queue.size();
+        }
+
+        @Override
+        public void process(T obj) {
+            queue.add(obj);
+        }
+    }
+
+    public static <T> PartitionedSink<T> newPartitionedSink(Sink<T> sink, int threads,
+            Function<? super T, ?> keyExtractor) {
+        return new PartitionedSink<>(sink, threads, keyExtractor, 0);
+    }
+
+    /**
+     * Return a {@link PartitionedSink} which, every
+     * {@code rebalancePeriodMillis} milliseconds, moves keys, along with their
+     * queued objects, away from the partition with the longest queue and onto
+     * the partition with the shortest queue.
+     */
+    public static <T> PartitionedSink<T> newPartitionedSink(Sink<T> sink, int threads,
+            Function<? super T, ?> keyExtractor, long rebalancePeriodMillis) {
+        if (rebalancePeriodMillis <= 0) {
+            throw new IllegalArgumentException("The rebalance period must be positive");
+        }
+        return new PartitionedSink<>(sink, threads, keyExtractor, rebalancePeriodMillis);
+    }
+
+    /**
+     * A {@link PartitionedSink} processes objects on several {@link Thread}s
+     * like a {@link MultiThreadedSink}, but every {@link Thread} has its own
+     * queue, and all objects with the same key (as returned by the key
+     * extractor) are routed to the same queue. Therefore, objects with the same
+     * key are processed in the order in which they were passed to
+     * {@link #process(Object)}, while objects with different keys are processed
+     * in parallel.
+     * <p>
+     * Keys are hashed into a fixed number of buckets, and each bucket is
+     * assigned to a partition. The key extractor is only called once per
+     * object, in {@link #process(Object)}, so an object may change while it is
+     * queued. When rebalancing, a bucket is moved together with the objects it
+     * has queued, but never while one of its objects is being processed, so
+     * rebalancing never reorders the objects of a key.
+     * </p>
+     */
+    public static class PartitionedSink<T> implements Sink<T> {
+
+        private static final int                 bucketsPerThread = 16;
+        private static final int                 imbalance        = 64;
+
+        /**
+         * An object, together with the bucket that it was routed by.
+         */
+        private static class Entry<T> {
+
+            private final T   obj;
+            private final int bucket;
+
+            private Entry(T obj, int bucket) {
+                this.obj = obj;
+                this.bucket = bucket;
+            }
+        }
+
+        private final Function<? super T, ?>     keyExtractor;
+        private final BlockingQueue<Entry<T>>[]  queues;
+        private final int[]                      partitions;
+        /**
+         * The number of queued or processing objects in each bucket.
+         */
+        private final AtomicIntegerArray         inFlight;
+        /**
+         * Held while routing an object to a bucket, or moving the bucket.
+         */
+        private final Object[]                   locks;
+        private final ExecutorService            executorService;
+        private final ScheduledExecutorService   rebalancer;
+
+        @SuppressWarnings("unchecked")
+        private PartitionedSink(Sink<T> sink, int threads, Function<? super T, ?> keyExtractor,
+                long rebalancePeriodMillis) {
+            if (sink == null) {
+                throw new NullPointerException("The sink cannot be null");
+            }
+            if (keyExtractor == null) {
+                throw new NullPointerException("The key extractor cannot be null");
+            }
+            this.keyExtractor = keyExtractor;
+            this.queues = new BlockingQueue[threads];
+            this.partitions = new int[threads * bucketsPerThread];
+            this.inFlight = new AtomicIntegerArray(partitions.length);
+            this.locks = new Object[partitions.length];
+            for (int bucket = 0; bucket < partitions.length; bucket++) {
+                partitions[bucket] = bucket % threads;
+                locks[bucket] = new Object();
+            }
+            this.executorService = Executors.newFixedThreadPool(threads);
+            for (int i = 0; i < threads; i++) {
+                BlockingQueue<Entry<T>> queue = new LinkedBlockingQueue<>();
+                queues[i] = queue;
+                this.executorService.execute(() -> {
+                    try {
+                        while (true) {
+                            Entry<T> entry = queue.take();
+                            try {
+                                sink.process(entry.obj);
+                            } finally {
+                                inFlight.decrementAndGet(entry.bucket);
+                            }
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                });
+            }
+            if (rebalancePeriodMillis > 0) {
+                this.rebalancer = Executors.newSingleThreadScheduledExecutor();
+                this.rebalancer.scheduleWithFixedDelay(this::rebalance, rebalancePeriodMillis,
+                        rebalancePeriodMillis, TimeUnit.MILLISECONDS);
+            } else {
+                this.rebalancer = null;
+            }
+        }
+
+        private int bucket(T obj) {
+            int hash = Objects.hashCode(keyExtractor.apply(obj));
+            return Math.floorMod(hash ^ (hash >>> 16), partitions.length);
+        }
+
+        public void stop() {
+            if (rebalancer != null) {
+                rebalancer.shutdownNow();
+            }
+            executorService.shutdownNow();
+        }
+
+        /**
+         * @return The number of objects waiting in each partition's queue.
+         */
+        public int[] queueSizes() {
+            int[] sizes = new int[queues.length];
+            for (int i = 0; i < queues.length; i++) {
+                sizes[i] = queues[i].size();
+            }
+            return sizes;
+        }
+
+        @Override
+        public void process(T obj) {
+            int bucket = bucket(obj);
+            synchronized (locks[bucket]) {
+                inFlight.incrementAndGet(bucket);
+                queues[partitions[bucket]].add(new Entry<>(obj, bucket));
+            }
+        }
+
+        /**
+         * Move one bucket, and the objects it has queued, from the partition
+         * with the longest queue to the partition with the shortest queue, if
+         * they are sufficiently unbalanced. The bucket with the most queued
+         * objects which still narrows the gap is preferred, and an idle bucket
+         * is moved if none of those can be.
+         */
+        private void rebalance() {
+            int[] sizes = queueSizes();
+            int hottest = 0;
+            int coldest = 0;
+            for (int i = 1; i < sizes.length; i++) {
+                if (sizes[i] > sizes[hottest]) {
+                    hottest = i;
+                }
+                if (sizes[i] < sizes[coldest]) {
+                    coldest = i;
+                }
+            }
+            int gap = sizes[hottest] - sizes[coldest];
+            if (gap < imbalance) {
+                return;
+            }
+            int busiest = -1;
+            int busiestCount = 0;
+            for (int bucket = 0; bucket < partitions.length; bucket++) {
+                int count = inFlight.get(bucket);
+                if (partitions[bucket] == hottest && count > busiestCount && count < gap) {
+                    busiest = bucket;
+                    busiestCount = count;
+                }
+            }
+            if (busiest >= 0 && move(busiest, hottest, coldest)) {
+                return;
+            }
+            for (int bucket = 0; bucket < partitions.length; bucket++) {
+                if (partitions[bucket] == hottest && inFlight.get(bucket) == 0
+                        && move(bucket, hottest, coldest)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Move a bucket and its queued objects from one partition to another,
+         * unless one of its objects is being processed right now.
+         *
+         * @return Whether the bucket was moved.
+         */
+        private boolean move(int bucket, int from, int to) {
+            synchronized (locks[bucket]) {
+                /* No new objects can be routed to the bucket now, only taken off. */
+                List<Entry<T>> entries = new ArrayList<>();
+                for (Entry<T> entry : queues[from]) {
+                    if (entry.bucket == bucket) {
+                        entries.add(entry);
+                    }
+                }
+                /*
+                 * Remove the newest first. The worker takes the oldest first, so
+                 * whatever it takes meanwhile is older than everything removed.
+                 */
+                List<Entry<T>> removed = new ArrayList<>();
+                for (int i = entries.size() - 1; i >= 0; i--) {
+                    if (queues[from].remove(entries.get(i))) {
+                        removed.add(entries.get(i));
+                    }
+                }
+                Collections.reverse(removed);
+                if (inFlight.get(bucket) != removed.size()) {
+                    /*
+                     * An older object is being processed, so the removed ones
+                     * go back behind it. They are still in order, because no
+                     * newer objects of the bucket could be queued meanwhile.
+                     */
+                    queues[from].addAll(removed);
+                    return false;
+                }
+                queues[to].addAll(removed);
+                partitions[bucket] = to;
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package io.jeti.streams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * <p>
+ * A {@link StreamDecorator} transforms the raw bytes of a stream, below
+ * whatever a {@link StreamWriter} or {@link StreamReader} does to it in its
+ * {@code preLoop} method. The writing side wraps the {@link OutputStream} with
+ * {@link #decorate(OutputStream)}, and the reading side undoes that by
+ * wrapping the {@link InputStream} with {@link #decorate(InputStream)}.
+ * {@link Compression} is an example of such a stage.
+ * </p>
+ * <p>
+ * Stages are combined with {@link #andThen(StreamDecorator)}, and applied to
+ * an existing {@link StreamWriter} or {@link StreamReader} with
+ * {@link #decorate(StreamWriter, StreamDecorator)} and
+ * {@link #decorate(StreamReader, StreamDecorator)}:
+ * </p>
+ * <pre>
+ * StreamDecorator pipeline = Compression.lz().andThen(otherStage);
+ * StreamWriterManager.start(out, StreamDecorator.decorate(writer, pipeline), queue, 64, 8192);
+ * StreamReaderManager.start(in, StreamDecorator.decorate(reader, pipeline), sink);
+ * </pre>
+ * <p>
+ * A decorated stream may hold bytes back until it is flushed, so the
+ * {@link StreamWriter} should flush its stream in
+ * {@link StreamWriter#flush(Object)}, which all of the writers in this
+ * package do.
+ * </p>
+ */
+public interface StreamDecorator {
+
+    /**
+     * Wrap the {@link OutputStream} that a {@link StreamWriter} writes to.
+     */
+    OutputStream decorate(OutputStream outputStream) throws IOException;
+
+    /**
+     * Wrap the {@link InputStream} that a {@link StreamReader} reads from,
+     * undoing what {@link #decorate(OutputStream)} did to the bytes.
+     */
+    InputStream decorate(InputStream inputStream) throws IOException;
+
+    /**
+     * @return A {@link StreamDecorator} which passes the written bytes through
+     *         this stage first, and then through the {@code next} stage.
+     */
+    default StreamDecorator andThen(StreamDecorator next) {
+        StreamDecorator first = this;
+        return new StreamDecorator() {
+
+            @Override
+            public OutputStream decorate(OutputStream outputStream) throws IOException {
+                return first.decorate(next.decorate(outputStream));
+            }
+
+            @Override
+            public InputStream decorate(InputStream inputStream) throws IOException {
+                return first.decorate(next.decorate(inputStream));
+            }
+        };
+    }
+
+    /**
+     * @return A {@link StreamWriter} which behaves just like the given one,
+     *         except that it writes to a stream wrapped by the
+     *         {@link StreamDecorator}.
+     */
+    static <S, O> StreamWriter<S, O> decorate(StreamWriter<S, O> writer,
+            StreamDecorator decorator) {
+        return new StreamWriter<S, O>() {
+
+            private OutputStream decorated;
+
+            @Override
+            public S preLoop(OutputStream outputStream) throws IOException {
+                decorated = decorator.decorate(outputStream);
+                return writer.preLoop(decorated);
+            }
+
+            @Override
+            public void writeOne(S stream, O objectToWrite) throws IOException {
+                writer.writeOne(stream, objectToWrite);
+            }
+
+            @Override
+            public void flush(S stream) throws IOException {
+                writer.flush(stream);
+            }
+
+            @Override
+            public void stop(Thread thread) {
+                writer.stop(thread);
+            }
+
+            @Override
+            public void preClose(OutputStream outputStream, S stream) {
+                writer.preClose(outputStream, stream);
+                if (decorated != null) {
+                    try {
+                        decorated.close();
+                    } catch (IOException e) {
+                        /* The underlying stream is being closed anyway. */
+                    }
+                }
+            }
+
+            @Override
+            public void closed() {
+                writer.closed();
+            }
+        };
+    }
+
+    /**
+     * @return A {@link StreamReader} which behaves just like the given one,
+     *         except that it reads from a stream wrapped by the
+     *         {@link StreamDecorator}.
+     */
+    static <S, O> StreamReader<S, O> decorate(StreamReader<S, O> reader,
+            StreamDecorator decorator) {
+        return new StreamReader<S, O>() {
+
+            private InputStream decorated;
+
+            @Override
+            public S preLoop(InputStream inputStream) throws IOException {
+                decorated = decorator.decorate(inputStream);
+                return reader.preLoop(decorated);
+            }
+
+            @Override
+            public O readOne(S stream) throws IOException, ClassNotFoundException {
+                return reader.readOne(stream);
+            }
+
+            @Override
+            public void stop(Thread thread) {
+                reader.stop(thread);
+            }
+
+            @Override
+            public void preClose(InputStream inputStream, S stream) {
+                reader.preClose(inputStream, stream);
+                if (decorated != null) {
+                    try {
+                        decorated.close();
+                    } catch (IOException e) {
+                        /* The underlying stream is being closed anyway. */
+                    }
+                }
+            }
+
+            @Override
+            public void closed() {
+                reader.closed();
+            }
+        };
+    }
+}
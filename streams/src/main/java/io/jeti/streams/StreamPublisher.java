@@ -0,0 +1,201 @@
+package io.jeti.streams;
+
+import java.io.EOFException;
+import java.io.InputStream;
+import java.util.concurrent.Executor;
+
+/**
+ * <p>
+ * A {@link ReactiveStreams.Publisher} which reads objects from an {@link InputStream}
+ * with a {@link StreamReader}, in the same way as a
+ * {@link StreamReaderManager}, except that it only reads the next object once
+ * its {@link ReactiveStreams.Subscriber} has requested it. While there is no demand,
+ * nothing is read, so the receive buffer of a socket fills up and the sender
+ * is slowed down by the transport itself, instead of the objects piling up in
+ * memory.
+ * </p>
+ * <p>
+ * A stream can only be read once, so a {@link StreamPublisher} accepts a
+ * single {@link ReactiveStreams.Subscriber}, and starts reading when it subscribes. The
+ * end of the stream is signalled with {@link ReactiveStreams.Subscriber#onComplete()},
+ * and any other {@link Exception} with
+ * {@link ReactiveStreams.Subscriber#onError(Throwable)}. Cancelling the
+ * {@link ReactiveStreams.Subscription} stops the {@link StreamReader} and closes the
+ * {@link InputStream}.
+ * </p>
+ */
+public class StreamPublisher<S, O> implements ReactiveStreams.Publisher<O> {
+
+    private final InputStream        stream;
+    private final StreamReader<S, O> streamer;
+    private final Executor           executor;
+    private boolean                  subscribed;
+
+    /**
+     * Create a {@link StreamPublisher} which reads on a new, dedicated
+     * {@link Thread}.
+     */
+    public StreamPublisher(InputStream inputStream, StreamReader<S, O> reader) {
+        this(inputStream, reader, task -> new Thread(task).start());
+    }
+
+    /**
+     * Create a {@link StreamPublisher} whose reading loop is run by the
+     * specified {@link Executor}.
+     */
+    public StreamPublisher(InputStream inputStream, StreamReader<S, O> reader,
+            Executor executor) {
+        if (reader == null) {
+            throw new NullPointerException("The reader cannot be null");
+        }
+        if (executor == null) {
+            throw new NullPointerException("The executor cannot be null");
+        }
+        this.stream = inputStream;
+        this.streamer = reader;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(ReactiveStreams.Subscriber<? super O> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("The subscriber cannot be null");
+        }
+        synchronized (this) {
+            if (!subscribed) {
+                subscribed = true;
+                ReadingSubscription subscription = new ReadingSubscription(subscriber);
+                subscriber.onSubscribe(subscription);
+                executor.execute(subscription::loop);
+                return;
+            }
+        }
+        subscriber.onSubscribe(new ReactiveStreams.Subscription() {
+
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        subscriber.onError(new IllegalStateException("The stream already has a subscriber"));
+    }
+
+    private class ReadingSubscription implements ReactiveStreams.Subscription {
+
+        private final ReactiveStreams.Subscriber<? super O> subscriber;
+        private long                                        demand;
+        private boolean                                     cancelled;
+        private Throwable                                   error;
+        private Thread                                      thread;
+
+        private ReadingSubscription(ReactiveStreams.Subscriber<? super O> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public synchronized void request(long n) {
+            if (cancelled) {
+                return;
+            }
+            if (n <= 0) {
+                /* Signalled from the reading loop, which owns the subscriber. */
+                error = new IllegalArgumentException(
+                        "The number of requested items must be positive, but was " + n);
+                cancel();
+                return;
+            }
+            demand += n;
+            if (demand < 0) {
+                demand = Long.MAX_VALUE;
+            }
+            notifyAll();
+        }
+
+        @Override
+        public synchronized void cancel() {
+            cancelled = true;
+            notifyAll();
+            if (thread != null) {
+                streamer.stop(thread);
+            }
+        }
+
+        /**
+         * Wait until the subscriber wants another object, and return false if
+         * it cancelled instead.
+         */
+        private synchronized boolean awaitDemand() throws InterruptedException {
+            while (demand == 0 && !cancelled) {
+                wait();
+            }
+            if (cancelled) {
+                return false;
+            }
+            demand--;
+            return true;
+        }
+
+        private synchronized boolean running() {
+            thread = Thread.currentThread();
+            return !cancelled;
+        }
+
+        private synchronized void finished() {
+            if (thread == Thread.currentThread()) {
+                Thread.interrupted();
+            }
+            thread = null;
+            cancelled = true;
+        }
+
+        private synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        private void loop() {
+            S modifiedStream = null;
+            Throwable failure = null;
+            boolean completed = false;
+            try {
+                if (running()) {
+                    modifiedStream = streamer.preLoop(stream);
+                    while (awaitDemand()) {
+                        subscriber.onNext(streamer.readOne(modifiedStream));
+                    }
+                }
+            } catch (EOFException e) {
+                completed = true;
+            } catch (Exception e) {
+                failure = e;
+            } finally {
+                boolean cancelled = isCancelled();
+                finished();
+                streamer.preClose(stream, modifiedStream);
+                if (stream != null) {
+                    try {
+                        stream.close();
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+                streamer.closed();
+                Throwable pending;
+                synchronized (this) {
+                    pending = error;
+                }
+                if (pending != null) {
+                    subscriber.onError(pending);
+                } else if (!cancelled) {
+                    if (completed) {
+                        subscriber.onComplete();
+                    } else if (failure != null) {
+                        subscriber.onError(failure);
+                    }
+                }
+            }
+        }
+    }
+}
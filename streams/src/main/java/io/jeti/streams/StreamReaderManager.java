@@ -1,6 +1,7 @@
 package io.jeti.streams;
 
 import java.io.InputStream;
+import java.util.concurrent.Executor;
 
 /**
  * A {@link StreamReaderManager} defines two methods:
@@ -9,17 +10,28 @@ import java.io.InputStream;
  * The {@link StreamReaderManager} will keep trying to use the
  * {@link StreamReader} to read from the specified {@link InputStream} until it
  * is told to {@link #stop()} or an {@link Exception} occurs.
+ * <p>
+ * By default, the reading loop runs on a new, dedicated {@link Thread}.
+ * Alternatively, the loop can be handed to any {@link Executor} with
+ * {@link #start(InputStream, StreamReader, Sink, Executor)}, for example one
+ * from {@link Threads#newVirtualThreadPerTaskExecutor()}.
+ * </p>
  */
 public class StreamReaderManager<S, O> {
 
     private final StreamReader<S, O> streamer;
-    private final Thread             thread;
+    private final Runnable           loop;
+    private Thread                   thread;
+    private boolean                  stopped;
 
     private StreamReaderManager(InputStream stream, StreamReader<S, O> streamer, Sink<O> sink) {
         this.streamer = streamer;
-        this.thread = new Thread(() -> {
+        this.loop = () -> {
             S modifiedStream = null;
             try {
+                if (!running()) {
+                    return;
+                }
                 modifiedStream = streamer.preLoop(stream);
                 while (true) {
                     sink.process(streamer.readOne(modifiedStream));
@@ -27,6 +39,7 @@ public class StreamReaderManager<S, O> {
             } catch (Exception e) {
                 e.printStackTrace();
             } finally {
+                finished();
                 streamer.preClose(stream, modifiedStream);
                 if (stream != null) {
                     try {
@@ -37,7 +50,28 @@ public class StreamReaderManager<S, O> {
                 }
                 streamer.closed();
             }
-        });
+        };
+    }
+
+    /**
+     * Record the {@link Thread} which is running the loop, and return false if
+     * the manager was already stopped before the loop got a chance to run.
+     */
+    private synchronized boolean running() {
+        thread = Thread.currentThread();
+        return !stopped;
+    }
+
+    /**
+     * Forget the {@link Thread} which was running the loop, so that a later
+     * {@link #stop()} cannot interrupt whatever that {@link Thread} runs next.
+     */
+    private synchronized void finished() {
+        if (thread == Thread.currentThread()) {
+            Thread.interrupted();
+        }
+        thread = null;
+        stopped = true;
     }
 
     /**
@@ -48,16 +82,34 @@ public class StreamReaderManager<S, O> {
     public static <S, O> StreamReaderManager start(InputStream inputStream,
             StreamReader<S, O> reader, Sink<O> sink) {
         StreamReaderManager<S, O> manager = new StreamReaderManager<>(inputStream, reader, sink);
-        manager.thread.start();
+        new Thread(manager.loop).start();
+        return manager;
+    }
+
+    /**
+     * Create, start, and return a {@link StreamReaderManager}, whose reading
+     * loop is run by the specified {@link Executor}.
+     */
+    public static <S, O> StreamReaderManager start(InputStream inputStream,
+            StreamReader<S, O> reader, Sink<O> sink, Executor executor) {
+        if (executor == null) {
+            throw new NullPointerException("The executor cannot be null");
+        }
+        StreamReaderManager<S, O> manager = new StreamReaderManager<>(inputStream, reader, sink);
+        executor.execute(manager.loop);
         return manager;
     }
 
     /**
      * Stop reading from the {@link InputStream}. A {@link StreamReader} can
      * define its own stopping behavior, but typically this call is equivalent
-     * to simply interrupting the reading thread.
+     * to simply interrupting the reading thread. If the loop has not started
+     * running yet, it will exit as soon as it starts.
      */
-    public void stop() {
-        streamer.stop(thread);
+    public synchronized void stop() {
+        stopped = true;
+        if (thread != null) {
+            streamer.stop(thread);
+        }
     }
-}
\ No newline at end of file
+}
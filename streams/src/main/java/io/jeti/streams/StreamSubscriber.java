@@ -0,0 +1,233 @@
+package io.jeti.streams;
+
+import io.jeti.streams.StreamWriterManager.FlushPolicy;
+import java.io.OutputStream;
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * A {@link ReactiveStreams.Subscriber} which writes the objects it receives to an
+ * {@link OutputStream} with a {@link StreamWriter}, using a
+ * {@link StreamWriterManager}. It requests {@code prefetch} objects up front,
+ * and then one more for every object that the {@link StreamWriterManager}
+ * takes off of its queue, so at most {@code prefetch} objects are ever
+ * waiting to be written. When the {@link OutputStream} blocks, for example
+ * because the peer stopped reading, the demand dries up and the
+ * {@link ReactiveStreams.Publisher} is slowed down with it.
+ * </p>
+ * <p>
+ * On {@link #onComplete()}, everything already received is written before the
+ * {@link OutputStream} is closed. On {@link #onError(Throwable)}, or
+ * {@link #cancel()}, writing stops right away.
+ * </p>
+ */
+public class StreamSubscriber<S, O> implements ReactiveStreams.Subscriber<O> {
+
+    private static final int             prefetchDefault = 256;
+
+    private final OutputStream           stream;
+    private final StreamWriter<S, O>     streamer;
+    private final int                    prefetch;
+    private final FlushPolicy            policy;
+    private final Executor               executor;
+    private final DemandQueue            queue;
+    private ReactiveStreams.Subscription subscription;
+    private StreamWriterManager<S, O>    manager;
+
+    public StreamSubscriber(OutputStream outputStream, StreamWriter<S, O> writer) {
+        this(outputStream, writer, prefetchDefault, FlushPolicy.perObject(),
+                task -> new Thread(task).start());
+    }
+
+    /**
+     * @param prefetch: The maximum number of objects which may be waiting to
+     *            be written.
+     * @param executor: Runs the writing loop of the
+     *            {@link StreamWriterManager}.
+     */
+    public StreamSubscriber(OutputStream outputStream, StreamWriter<S, O> writer, int prefetch,
+            FlushPolicy policy, Executor executor) {
+        if (writer == null) {
+            throw new NullPointerException("The writer cannot be null");
+        }
+        if (policy == null) {
+            throw new NullPointerException("The flush policy cannot be null");
+        }
+        if (executor == null) {
+            throw new NullPointerException("The executor cannot be null");
+        }
+        if (prefetch < 1) {
+            throw new IllegalArgumentException("The prefetch must be positive");
+        }
+        this.stream = outputStream;
+        this.streamer = writer;
+        this.prefetch = prefetch;
+        this.policy = policy;
+        this.executor = executor;
+        this.queue = new DemandQueue(prefetch + 1);
+    }
+
+    /**
+     * The queue of the {@link StreamWriterManager}, which requests another
+     * object whenever one is taken off. Once the publisher completes, it hands
+     * out {@link StreamWriterManager#END_OF_QUEUE} after the last object.
+     */
+    private class DemandQueue extends AbstractQueue<O> implements BlockingQueue<O> {
+
+        private final BlockingQueue<Object> queue;
+
+        private DemandQueue(int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        private boolean complete() {
+            return queue.offer(StreamWriterManager.END_OF_QUEUE);
+        }
+
+        @Override
+        public boolean offer(O obj) {
+            return queue.offer(obj);
+        }
+
+        @Override
+        public boolean offer(O obj, long timeout, TimeUnit unit) throws InterruptedException {
+            return queue.offer(obj, timeout, unit);
+        }
+
+        @Override
+        public void put(O obj) throws InterruptedException {
+            queue.put(obj);
+        }
+
+        @Override
+        public O take() throws InterruptedException {
+            return taken(queue.take());
+        }
+
+        @Override
+        public O poll() {
+            return taken(queue.poll());
+        }
+
+        @Override
+        public O poll(long timeout, TimeUnit unit) throws InterruptedException {
+            return taken(queue.poll(timeout, unit));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public O peek() {
+            return (O) queue.peek();
+        }
+
+        @Override
+        public int size() {
+            return queue.size();
+        }
+
+        @Override
+        public int remainingCapacity() {
+            return queue.remainingCapacity();
+        }
+
+        @Override
+        public int drainTo(Collection<? super O> c) {
+            return drainTo(c, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public int drainTo(Collection<? super O> c, int maxElements) {
+            int drained = 0;
+            O obj;
+            while (drained < maxElements && (obj = poll()) != null) {
+                c.add(obj);
+                drained++;
+            }
+            return drained;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Iterator<O> iterator() {
+            return (Iterator<O>) queue.iterator();
+        }
+
+        @SuppressWarnings("unchecked")
+        private O taken(Object obj) {
+            if (obj != null && obj != StreamWriterManager.END_OF_QUEUE) {
+                ReactiveStreams.Subscription current = currentSubscription();
+                if (current != null) {
+                    current.request(1);
+                }
+            }
+            return (O) obj;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void onSubscribe(ReactiveStreams.Subscription subscription) {
+        if (subscription == null) {
+            throw new NullPointerException("The subscription cannot be null");
+        }
+        synchronized (this) {
+            if (this.subscription != null) {
+                subscription.cancel();
+                return;
+            }
+            this.subscription = subscription;
+            manager = StreamWriterManager.start(stream, streamer, queue, policy, executor);
+        }
+        subscription.request(prefetch);
+    }
+
+    @Override
+    public void onNext(O item) {
+        if (item == null) {
+            throw new NullPointerException("The item cannot be null");
+        }
+        if (!queue.offer(item)) {
+            /* The publisher sent more than was requested. */
+            cancel();
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        stopManager();
+    }
+
+    @Override
+    public void onComplete() {
+        if (!queue.complete()) {
+            stopManager();
+        }
+    }
+
+    /**
+     * Cancel the {@link ReactiveStreams.Subscription}, and stop writing.
+     */
+    public void cancel() {
+        ReactiveStreams.Subscription current = currentSubscription();
+        if (current != null) {
+            current.cancel();
+        }
+        stopManager();
+    }
+
+    private synchronized ReactiveStreams.Subscription currentSubscription() {
+        return subscription;
+    }
+
+    private synchronized void stopManager() {
+        if (manager != null) {
+            manager.stop();
+        }
+    }
+}
@@ -69,6 +69,18 @@ public interface StreamWriter<S, O> {
      */
     void writeOne(S stream, O objectToWrite) throws IOException;
 
+    /**
+     * Push any bytes which are buffered in the object returned by
+     * {@link #preLoop(OutputStream)} out to the underlying {@link OutputStream}.
+     * The {@link StreamWriterManager} calls this at the end of every batch when
+     * it is batching writes, so a {@link StreamWriter} which wraps the
+     * {@link OutputStream} in a flushable stream should flush it here.
+     *
+     * @param stream: The modified stream which is returned from {@link #preLoop(OutputStream)}.
+     */
+    default void flush(S stream) throws IOException {
+    }
+
     /**
      * Stop writing to the {@link OutputStream}. Typically this will be done by interrupting
      * the {@link Thread} on which the {@link StreamWriter} is running.
@@ -1,7 +1,13 @@
 package io.jeti.streams;
 
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A {@link StreamWriterManager} defines two methods:
@@ -14,25 +20,225 @@ import java.util.concurrent.BlockingQueue;
  * {@link StreamWriterManager} will keep using the {@link StreamWriter} to write
  * to the specified {@link OutputStream} until it is told to {@link #stop()} or
  * an {@link Exception} occurs.
+ * <p>
+ * When the written bytes are actually sent is decided by a {@link FlushPolicy}.
+ * Every policy encodes objects into a buffer, so that one object never turns
+ * into a write per field, and then calls {@link StreamWriter#flush(Object)}
+ * when the policy says so:
+ * </p>
+ * <ul>
+ * <li>{@link FlushPolicy#perObject()} flushes after every object, for the
+ * lowest latency. This is the default.</li>
+ * <li>{@link FlushPolicy#whenIdle(int, int)} keeps draining whatever is
+ * already on the queue, and flushes as soon as it is empty, so a lone object
+ * is never held back, but a burst goes out in a single write.</li>
+ * <li>{@link FlushPolicy#maxLinger(long, int)} keeps waiting for more objects
+ * until the first unflushed one has waited for the given time.</li>
+ * <li>{@link FlushPolicy#maxBytes(int)} only flushes once the given number of
+ * bytes have been written, for bulk transfers where only throughput
+ * matters.</li>
+ * </ul>
+ * <p>
+ * Every policy also flushes when it has written its maximum number of bytes,
+ * and whatever is still buffered when the manager stops is flushed before
+ * the stream is closed.
+ * </p>
+ * <p>
+ * To let urgent objects overtake bulk traffic, give the manager a
+ * {@link PriorityLanes} queue.
+ * </p>
+ * <p>
+ * By default, the writing loop runs on a new, dedicated {@link Thread}.
+ * Alternatively, the loop can be handed to any {@link Executor} with the
+ * {@code start} overloads which take one, for example one from
+ * {@link Threads#newVirtualThreadPerTaskExecutor()}.
+ * </p>
  */
 public class StreamWriterManager<S, O> {
 
+    /**
+     * Decides when a {@link StreamWriterManager} flushes its
+     * {@link StreamWriter}. Flushing more often lowers the latency of each
+     * object, while flushing less often sends fewer, larger writes.
+     */
+    public static class FlushPolicy {
+
+        private static final int bufferBytesDefault = 8192;
+
+        private final int        maxObjects;
+        private final int        maxBytes;
+        private final long       maxLingerNanos;
+        private final boolean    whenIdle;
+
+        private FlushPolicy(int maxObjects, int maxBytes, long maxLingerNanos, boolean whenIdle) {
+            if (maxObjects < 1) {
+                throw new IllegalArgumentException("The maximum number of objects must be positive");
+            }
+            if (maxBytes < 1) {
+                throw new IllegalArgumentException("The maximum number of bytes must be positive");
+            }
+            this.maxObjects = maxObjects;
+            this.maxBytes = maxBytes;
+            this.maxLingerNanos = maxLingerNanos;
+            this.whenIdle = whenIdle;
+        }
+
+        /**
+         * Flush after every object. This is the default.
+         */
+        public static FlushPolicy perObject() {
+            return new FlushPolicy(1, bufferBytesDefault, 0, true);
+        }
+
+        /**
+         * Flush whenever the queue is empty, or after {@code maxObjects}
+         * objects, or {@code maxBytes} bytes, whichever comes first.
+         */
+        public static FlushPolicy whenIdle(int maxObjects, int maxBytes) {
+            return new FlushPolicy(maxObjects, maxBytes, 0, true);
+        }
+
+        /**
+         * Flush once the first unflushed object has waited for
+         * {@code maxLingerMicros} microseconds, or after {@code maxBytes}
+         * bytes, whichever comes first.
+         */
+        public static FlushPolicy maxLinger(long maxLingerMicros, int maxBytes) {
+            if (maxLingerMicros < 0) {
+                throw new IllegalArgumentException("The maximum linger cannot be negative");
+            }
+            return new FlushPolicy(Integer.MAX_VALUE, maxBytes,
+                    TimeUnit.MICROSECONDS.toNanos(maxLingerMicros), false);
+        }
+
+        /**
+         * Only flush after {@code maxBytes} bytes. The last objects written
+         * before the queue runs dry are held back until more objects arrive,
+         * or the manager is stopped.
+         */
+        public static FlushPolicy maxBytes(int maxBytes) {
+            return new FlushPolicy(Integer.MAX_VALUE, maxBytes, Long.MAX_VALUE, false);
+        }
+    }
+
+    /**
+     * Counts the bytes written since the last flush, and lets a
+     * {@link PacketOutputStream} reach the channel underneath the buffer.
+     */
+    private static class CountingOutputStream extends FilterOutputStream
+            implements ByteChannels.WritableBacked {
+
+        private final OutputStream raw;
+        private long               count;
+
+        private CountingOutputStream(OutputStream raw, int bufferBytes) {
+            super(new BufferedOutputStream(raw, bufferBytes));
+            this.raw = raw;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public WritableByteChannel channel() throws IOException {
+            WritableByteChannel channel = ByteChannels.channelOf(raw);
+            if (channel != null) {
+                out.flush();
+            }
+            return channel;
+        }
+
+        @Override
+        public void transferred(long bytes) {
+            count += bytes;
+        }
+    }
+
+    /**
+     * Put on the queue after the last object, to have the writing loop write
+     * and flush everything before it, and then end as if it was stopped.
+     */
+    static final Object              END_OF_QUEUE = new Object();
+
     private final StreamWriter<S, O> streamer;
-    private final Thread             thread;
+    private final Runnable           loop;
+    private Thread                   thread;
+    private boolean                  stopped;
 
     private StreamWriterManager(OutputStream stream, StreamWriter<S, O> streamer,
-            BlockingQueue<O> queue) {
+            BlockingQueue<O> queue, FlushPolicy policy) {
         this.streamer = streamer;
-        this.thread = new Thread(() -> {
+        this.loop = () -> {
             S modifiedStream = null;
+            CountingOutputStream counter = null;
             try {
-                modifiedStream = streamer.preLoop(stream);
-                while (true) {
-                    streamer.writeOne(modifiedStream, queue.take());
+                if (!running()) {
+                    return;
+                }
+                if (stream == null) {
+                    modifiedStream = streamer.preLoop(null);
+                } else {
+                    counter = new CountingOutputStream(stream, policy.maxBytes);
+                    modifiedStream = streamer.preLoop(counter);
+                }
+                /* Send whatever the StreamWriter wrote up front, such as a header. */
+                flush(modifiedStream, counter);
+                boolean ended = false;
+                while (!ended) {
+                    O obj = queue.take();
+                    if (obj == END_OF_QUEUE) {
+                        break;
+                    }
+                    long deadline = System.nanoTime() + policy.maxLingerNanos;
+                    int objects = 0;
+                    if (counter != null) {
+                        counter.count = 0;
+                    }
+                    while (true) {
+                        streamer.writeOne(modifiedStream, obj);
+                        if (++objects >= policy.maxObjects
+                                || (counter != null && counter.count >= policy.maxBytes)) {
+                            break;
+                        }
+                        if (policy.whenIdle) {
+                            obj = queue.poll();
+                        } else if (policy.maxLingerNanos == Long.MAX_VALUE) {
+                            obj = queue.take();
+                        } else {
+                            long remaining = deadline - System.nanoTime();
+                            obj = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS)
+                                    : null;
+                        }
+                        if (obj == END_OF_QUEUE) {
+                            ended = true;
+                            break;
+                        }
+                        if (obj == null) {
+                            break;
+                        }
+                    }
+                    flush(modifiedStream, counter);
                 }
             } catch (Exception e) {
                 e.printStackTrace();
             } finally {
+                finished();
+                if (modifiedStream != null) {
+                    try {
+                        flush(modifiedStream, counter);
+                    } catch (Exception e) {
+                        /* The stream is probably closed already. */
+                    }
+                }
                 streamer.preClose(stream, modifiedStream);
                 if (stream != null) {
                     try {
@@ -43,7 +249,40 @@ public class StreamWriterManager<S, O> {
                 }
                 streamer.closed();
             }
-        });
+        };
+    }
+
+    /**
+     * Flush the {@link StreamWriter}, and then the buffer underneath it, so
+     * that a {@link StreamWriter} which does not override
+     * {@link StreamWriter#flush(Object)} still has its bytes sent.
+     */
+    private void flush(S modifiedStream, CountingOutputStream counter) throws IOException {
+        streamer.flush(modifiedStream);
+        if (counter != null) {
+            counter.flush();
+        }
+    }
+
+    /**
+     * Record the {@link Thread} which is running the loop, and return false if
+     * the manager was already stopped before the loop got a chance to run.
+     */
+    private synchronized boolean running() {
+        thread = Thread.currentThread();
+        return !stopped;
+    }
+
+    /**
+     * Forget the {@link Thread} which was running the loop, so that a later
+     * {@link #stop()} cannot interrupt whatever that {@link Thread} runs next.
+     */
+    private synchronized void finished() {
+        if (thread == Thread.currentThread()) {
+            Thread.interrupted();
+        }
+        thread = null;
+        stopped = true;
     }
 
     /**
@@ -53,17 +292,89 @@ public class StreamWriterManager<S, O> {
      */
     public static <S, O> StreamWriterManager start(OutputStream outputStream,
             StreamWriter<S, O> writer, BlockingQueue<O> queue) {
-        StreamWriterManager<S, O> manager = new StreamWriterManager<>(outputStream, writer, queue);
-        manager.thread.start();
+        return start(outputStream, writer, queue, FlushPolicy.perObject());
+    }
+
+    /**
+     * Create, start, and return a {@link StreamWriterManager}, whose writing
+     * loop is run by the specified {@link Executor}.
+     */
+    public static <S, O> StreamWriterManager start(OutputStream outputStream,
+            StreamWriter<S, O> writer, BlockingQueue<O> queue, Executor executor) {
+        return start(outputStream, writer, queue, FlushPolicy.perObject(), executor);
+    }
+
+    /**
+     * Create, start, and return a {@link StreamWriterManager}, which will take
+     * objects from the {@link BlockingQueue} in batches until {@link #stop()}
+     * is called, or an {@link Exception} occurs. This is the same as using
+     * {@link FlushPolicy#whenIdle(int, int)}, or
+     * {@link FlushPolicy#perObject()} if {@code maxBatchSize} is 1.
+     *
+     * @param maxBatchSize: The maximum number of objects to write before
+     *            flushing. A value of 1 disables batching.
+     * @param maxBatchBytes: The size of the buffer that the batch is encoded
+     *            into. If a batch grows beyond this, the buffer is written out
+     *            early.
+     */
+    public static <S, O> StreamWriterManager start(OutputStream outputStream,
+            StreamWriter<S, O> writer, BlockingQueue<O> queue, int maxBatchSize,
+            int maxBatchBytes) {
+        return start(outputStream, writer, queue, maxBatchSize, maxBatchBytes,
+                task -> new Thread(task).start());
+    }
+
+    /**
+     * Create, start, and return a batching {@link StreamWriterManager} (see
+     * {@link #start(OutputStream, StreamWriter, BlockingQueue, int, int)}),
+     * whose writing loop is run by the specified {@link Executor}.
+     */
+    public static <S, O> StreamWriterManager start(OutputStream outputStream,
+            StreamWriter<S, O> writer, BlockingQueue<O> queue, int maxBatchSize,
+            int maxBatchBytes, Executor executor) {
+        return start(outputStream, writer, queue, maxBatchSize == 1 ? FlushPolicy.perObject()
+                : FlushPolicy.whenIdle(maxBatchSize, maxBatchBytes), executor);
+    }
+
+    /**
+     * Create, start, and return a {@link StreamWriterManager}, which flushes
+     * according to the specified {@link FlushPolicy}.
+     */
+    public static <S, O> StreamWriterManager start(OutputStream outputStream,
+            StreamWriter<S, O> writer, BlockingQueue<O> queue, FlushPolicy policy) {
+        return start(outputStream, writer, queue, policy, task -> new Thread(task).start());
+    }
+
+    /**
+     * Create, start, and return a {@link StreamWriterManager}, which flushes
+     * according to the specified {@link FlushPolicy}, and whose writing loop
+     * is run by the specified {@link Executor}.
+     */
+    public static <S, O> StreamWriterManager start(OutputStream outputStream,
+            StreamWriter<S, O> writer, BlockingQueue<O> queue, FlushPolicy policy,
+            Executor executor) {
+        if (executor == null) {
+            throw new NullPointerException("The executor cannot be null");
+        }
+        if (policy == null) {
+            throw new NullPointerException("The flush policy cannot be null");
+        }
+        StreamWriterManager<S, O> manager = new StreamWriterManager<>(outputStream, writer, queue,
+                policy);
+        executor.execute(manager.loop);
         return manager;
     }
 
     /**
      * Stop writing to the {@link OutputStream}. A {@link StreamWriter} can
      * define its own stopping behavior, but typically this call is equivalent
-     * to simply interrupting the writing thread.
+     * to simply interrupting the writing thread. If the loop has not started
+     * running yet, it will exit as soon as it starts.
      */
-    public void stop() {
-        streamer.stop(thread);
+    public synchronized void stop() {
+        stopped = true;
+        if (thread != null) {
+            streamer.stop(thread);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,55 @@
+package io.jeti.streams;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Helpers for creating the {@link Executor}s that can be passed to the
+ * {@link StreamReaderManager} and {@link StreamWriterManager}. In particular,
+ * {@link #newVirtualThreadPerTaskExecutor()} runs every manager on its own
+ * virtual thread when running on JDK 21 or later, and falls back to platform
+ * threads on older runtimes (such as Java 8), where virtual threads do not
+ * exist.
+ */
+public final class Threads {
+
+    private Threads() {
+    }
+
+    /**
+     * Return an {@link Executor} which starts a new {@link Thread} from the
+     * {@link ThreadFactory} for every task.
+     */
+    public static Executor newThreadPerTaskExecutor(ThreadFactory threadFactory) {
+        if (threadFactory == null) {
+            throw new NullPointerException("The thread factory cannot be null");
+        }
+        return task -> threadFactory.newThread(task).start();
+    }
+
+    /**
+     * Return an {@link Executor} which starts a new virtual {@link Thread} for
+     * every task if virtual threads are available, or a new platform
+     * {@link Thread} otherwise.
+     */
+    public static Executor newVirtualThreadPerTaskExecutor() {
+        return newThreadPerTaskExecutor(virtualThreadFactory());
+    }
+
+    /**
+     * Return a {@link ThreadFactory} which creates virtual threads if they are
+     * available, or {@link Executors#defaultThreadFactory()} otherwise.
+     */
+    public static ThreadFactory virtualThreadFactory() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Object builder = ofVirtual.invoke(null);
+            Method factory = ofVirtual.getReturnType().getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.defaultThreadFactory();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package io.jeti.streams;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Static helpers for writing and reading variable-length integers. Small
+ * non-negative values take a single byte, which makes them a good fit for
+ * identifiers and lengths. The zigzag variants map signed values of small
+ * magnitude onto small unsigned values before encoding them.
+ */
+public final class Varints {
+
+    private Varints() {
+    }
+
+    /**
+     * Write an int using 1 to 5 bytes, 7 bits per byte, least significant
+     * group first. Negative values always take 5 bytes, so use
+     * {@link #writeSignedVarInt(DataOutput, int)} for signed data.
+     */
+    public static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Read an int written by {@link #writeVarInt(DataOutput, int)}.
+     */
+    public static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Write a long using 1 to 10 bytes. See {@link #writeVarInt(DataOutput, int)}.
+     */
+    public static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte(((int) value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * Read a long written by {@link #writeVarLong(DataOutput, long)}.
+     */
+    public static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varlong");
+    }
+
+    /**
+     * Write a signed int using zigzag encoding followed by a varint.
+     */
+    public static void writeSignedVarInt(DataOutput out, int value) throws IOException {
+        writeVarInt(out, zigZagEncode(value));
+    }
+
+    /**
+     * Read an int written by {@link #writeSignedVarInt(DataOutput, int)}.
+     */
+    public static int readSignedVarInt(DataInput in) throws IOException {
+        return zigZagDecode(readVarInt(in));
+    }
+
+    /**
+     * Write a signed long using zigzag encoding followed by a varlong.
+     */
+    public static void writeSignedVarLong(DataOutput out, long value) throws IOException {
+        writeVarLong(out, zigZagEncode(value));
+    }
+
+    /**
+     * Read a long written by {@link #writeSignedVarLong(DataOutput, long)}.
+     */
+    public static long readSignedVarLong(DataInput in) throws IOException {
+        return zigZagDecode(readVarLong(in));
+    }
+
+    public static int zigZagEncode(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    public static int zigZagDecode(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public static long zigZagEncode(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    public static long zigZagDecode(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}